@@ -0,0 +1,18 @@
+#!/bin/bash
+# JMH基准测试：构建 target/benchmarks.jar 后按线程数依次运行，结果写到 bench-results/<提交>-t<线程数>.json
+#   ./bench.sh                                   全部基准，线程数1和4
+#   THREADS=8 ./bench.sh StoreBenchmark.get      只跑匹配的基准，其余参数原样传给JMH
+#   ./bench.sh ReloadIndex -p records=1000000 -jvmArgs -Xmx8g
+# 对比两次结果：
+#   java -cp target/benchmarks.jar bench.BenchCompare bench-results/a-t1.json bench-results/b-t1.json
+set -e
+cd "$(dirname "$0")"
+mvn -B -q -Pbench -DskipTests package
+commit=$(git rev-parse --short HEAD 2>/dev/null || echo local)
+if [ -n "$(git status --porcelain -- src 2>/dev/null)" ]; then
+    commit="${commit}-dirty"
+fi
+mkdir -p bench-results
+for t in ${THREADS:-1 4}; do
+    java -jar target/benchmarks.jar -t "$t" -rf json -rff "bench-results/${commit}-t${t}.json" "$@"
+done
@@ -0,0 +1,84 @@
+/*
+ *@Type BenchCompare.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 14:20
+ * @version
+ */
+package bench;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 对比两次JMH的JSON结果（-rf json），按 基准名 + 参数 + 线程数 配对，输出分数和变化百分比。
+ * 用法：java -cp target/benchmarks.jar bench.BenchCompare base.json new.json
+ */
+public class BenchCompare {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: BenchCompare <base.json> <new.json>");
+            System.exit(1);
+        }
+        Map<String, JSONObject> base = load(args[0]);
+        Map<String, JSONObject> current = load(args[1]);
+        System.out.printf("%-90s %14s %14s %9s  %s%n", "benchmark", "base", "new", "change", "unit");
+        for (Map.Entry<String, JSONObject> entry : current.entrySet()) {
+            JSONObject now = entry.getValue().getJSONObject("primaryMetric");
+            JSONObject old = base.containsKey(entry.getKey())
+                    ? base.get(entry.getKey()).getJSONObject("primaryMetric") : null;
+            double score = now.getDoubleValue("score");
+            String unit = now.getString("scoreUnit");
+            if (old == null) {
+                System.out.printf("%-90s %14s %14.3f %9s  %s%n", entry.getKey(), "-", score, "new", unit);
+                continue;
+            }
+            double oldScore = old.getDoubleValue("score");
+            double change = oldScore == 0 ? 0 : (score - oldScore) / oldScore * 100;
+            // 吞吐量越大越好，耗时越小越好，标出变好还是变差
+            boolean higherIsBetter = unit.contains("/s") || unit.contains("/ms") || unit.contains("/us")
+                    || unit.contains("/ns");
+            boolean better = higherIsBetter ? score >= oldScore : score <= oldScore;
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%  %s %s%n", entry.getKey(), oldScore, score, change,
+                    unit, better ? "" : "(worse)");
+        }
+        for (String key : base.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.printf("%-90s %s%n", key, "missing in new");
+            }
+        }
+    }
+
+    private static Map<String, JSONObject> load(String path) throws IOException {
+        String text = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+        JSONArray results = JSON.parseArray(text);
+        Map<String, JSONObject> byKey = new LinkedHashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            byKey.put(keyOf(result), result);
+        }
+        return byKey;
+    }
+
+    private static String keyOf(JSONObject result) {
+        String name = result.getString("benchmark");
+        StringBuilder key = new StringBuilder(name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1));
+        JSONObject params = result.getJSONObject("params");
+        if (params != null) {
+            for (Map.Entry<String, Object> param : new TreeMap<>(params).entrySet()) {
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue());
+            }
+        }
+        return key.append(" t=").append(result.getIntValue("threads")).toString();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *@Type BenchUtil.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 09:10
+ * @version
+ */
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * 基准测试共用的临时目录和数据生成
+ */
+public class BenchUtil {
+
+    private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+    public static File tempDir(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    public static String[] keys(int count) {
+        String[] keys = new String[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = String.format("key:%010d", i);
+        }
+        return keys;
+    }
+
+    /**
+     * 随机字母数字，不可压缩的部分较多，接近真实value
+     */
+    public static String value(Random random, int size) {
+        char[] chars = new char[size];
+        for (int i = 0; i < size; i++) {
+            chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 形如业务数据的JSON，用于编解码和压缩的对比
+     */
+    public static String json(Random random, int size) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        sb.append("{\"id\":").append(random.nextInt(1000000))
+                .append(",\"status\":\"").append(random.nextBoolean() ? "active" : "inactive")
+                .append("\",\"tags\":[\"alpha\",\"beta\"],\"items\":[");
+        int i = 0;
+        while (sb.length() < size - 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"sku\":\"").append(value(random, 8)).append("\",\"qty\":").append(random.nextInt(100)).append('}');
+            i++;
+        }
+        return sb.append("]}").toString();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *@Type CodecBenchmark.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 10:40
+ * @version
+ */
+package bench;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import model.command.Command;
+import model.command.SetCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import service.compress.Lz4Codec;
+import utils.CommandCodec;
+import utils.CommandUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记录格式的编解码：旧的fastjson格式（CommandUtil）和现在的二进制格式（CommandCodec），
+ * 以及SSTable数据块的LZ4压缩和解压
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"16", "256", "4096"})
+    private int valueSize;
+
+    private SetCommand command;
+
+    private byte[] jsonBytes;
+
+    private byte[] binaryBytes;
+
+    private final Lz4Codec lz4 = new Lz4Codec();
+
+    /**
+     * 4KB左右的数据块，由若干条JSON value的记录组成
+     */
+    private byte[] block;
+
+    private byte[] compressedBlock;
+
+    private byte[] decompressed;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        command = new SetCommand("user:0000012345", BenchUtil.json(random, valueSize));
+        jsonBytes = JSONObject.toJSONString(command).getBytes(StandardCharsets.UTF_8);
+        binaryBytes = CommandCodec.encode(command);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = 0; bytes.size() < 4096; i++) {
+            byte[] record = CommandCodec.encode(new SetCommand(String.format("user:%010d", i), BenchUtil.json(random, 200)));
+            out.writeInt(record.length);
+            out.write(record);
+        }
+        block = bytes.toByteArray();
+        compressedBlock = lz4.compress(block, 0, block.length);
+        decompressed = new byte[block.length];
+        System.out.println();
+        System.out.println("json=" + jsonBytes.length + "B binary=" + binaryBytes.length + "B block=" + block.length
+                + "B lz4=" + compressedBlock.length + "B");
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return JSONObject.toJSONString(command).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Command jsonDecode() {
+        return CommandUtil.jsonToCommand(JSON.parseObject(new String(jsonBytes, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return CommandCodec.encode(command);
+    }
+
+    @Benchmark
+    public Command binaryDecode() {
+        return CommandCodec.decode(binaryBytes);
+    }
+
+    /**
+     * 读路径只解码value
+     */
+    @Benchmark
+    public String binaryDecodeValue() {
+        return CommandCodec.decodeValue(binaryBytes);
+    }
+
+    @Benchmark
+    public byte[] lz4CompressBlock() {
+        return lz4.compress(block, 0, block.length);
+    }
+
+    @Benchmark
+    public byte[] lz4DecompressBlock() throws IOException {
+        lz4.decompress(compressedBlock, 0, compressedBlock.length, decompressed, 0, decompressed.length);
+        return decompressed;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *@Type FileReadBenchmark.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 11:10
+ * @version
+ */
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.RandomAccessFileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按偏移量读一条记录：旧的RandomAccessFileUtil每次打开关闭文件，
+ * 和共享一个FileChannel的positional read、只读映射的对比。文件在页缓存里
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileReadBenchmark {
+
+    @Param({"128", "4096"})
+    private int recordSize;
+
+    @Param({"65536"})
+    private int recordCount;
+
+    private File dir;
+
+    private String path;
+
+    private RandomAccessFile file;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer mapped;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = BenchUtil.tempDir("easy-db-read-bench");
+        path = new File(dir, "records.bin").getPath();
+        byte[] record = new byte[recordSize];
+        new Random(42).nextBytes(record);
+        try (RandomAccessFile out = new RandomAccessFile(path, "rw")) {
+            for (int i = 0; i < recordCount; i++) {
+                out.write(record);
+            }
+        }
+        file = new RandomAccessFile(path, "r");
+        channel = file.getChannel();
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        file.close();
+        BenchUtil.delete(dir);
+    }
+
+    private long randomOffset() {
+        return (long) ThreadLocalRandom.current().nextInt(recordCount) * recordSize;
+    }
+
+    @Benchmark
+    public byte[] openPerRead() {
+        return RandomAccessFileUtil.readByIndex(path, randomOffset(), recordSize);
+    }
+
+    @Benchmark
+    public ByteBuffer sharedChannelPread() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(recordSize);
+        long pos = randomOffset();
+        while (buffer.hasRemaining()) {
+            channel.read(buffer, pos + buffer.position());
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public byte[] mmapCopy() {
+        ByteBuffer view = mapped.duplicate();
+        view.position((int) randomOffset());
+        byte[] bytes = new byte[recordSize];
+        view.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *@Type ReloadIndexBenchmark.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 10:05
+ * @version
+ */
+package bench;
+
+import model.command.SetCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.NormalStore;
+import service.StoreConfig;
+import service.compress.BlockCodecs;
+import service.index.IndexTypeEnum;
+import service.table.HintFile;
+import service.table.SSTable;
+import service.table.SSTableWriter;
+import utils.CommandCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动时重建索引的耗时：source=WAL时整个数据都在预写日志里，启动时回放进内存表；
+ * source=SSTABLE时数据在若干SSTable里，启动时读提示文件建索引。
+ * 1000万条需要几GB堆，用 -jvmArgs -Xmx8g 运行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ReloadIndexBenchmark {
+
+    /**
+     * 每个SSTable的记录数
+     */
+    private static final int RECORDS_PER_TABLE = 1000000;
+
+    @Param({"1000000", "10000000"})
+    private int records;
+
+    @Param({"WAL", "SSTABLE"})
+    private String source;
+
+    @Param({"HASH"})
+    private IndexTypeEnum indexType;
+
+    @Param({"100"})
+    private int valueSize;
+
+    private File dir;
+
+    private StoreConfig config;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = BenchUtil.tempDir("easy-db-reload-bench");
+        config = new StoreConfig();
+        config.setIndexType(indexType);
+        config.setIndexInitialCapacity(Math.max(config.getIndexInitialCapacity(), records));
+        // 不在启动时刷盘或合并，每次打开看到的文件都一样
+        config.setStoreThreshold(Integer.MAX_VALUE);
+        config.setCompactionTrigger(Integer.MAX_VALUE);
+        config.setValueCacheBytes(0);
+        Random random = new Random(42);
+        String value = BenchUtil.value(random, valueSize);
+        if ("WAL".equals(source)) {
+            writeLog(random, value);
+        } else {
+            writeTables(random, value);
+        }
+    }
+
+    /**
+     * 直接按日志格式写出records条单条记录，约10%的key重复
+     */
+    private void writeLog(Random random, String value) throws IOException {
+        String path = dir.getPath() + File.separator + NormalStore.NAME + NormalStore.TABLE;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 20))) {
+            for (int i = 0; i < records; i++) {
+                byte[] bytes = CommandCodec.encode(new SetCommand(key(random.nextInt(records)), value));
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * 按编号从小到大写出若干SSTable和提示文件，每个表的key有序
+     */
+    private void writeTables(Random random, String value) throws IOException {
+        int tableCount = (records + RECORDS_PER_TABLE - 1) / RECORDS_PER_TABLE;
+        for (int t = 0; t < tableCount; t++) {
+            int id = t + 1;
+            String path = SSTable.genFilePath(dir.getPath(), NormalStore.NAME, id);
+            String hintPath = HintFile.genFilePath(dir.getPath(), NormalStore.NAME, id);
+            int count = Math.min(RECORDS_PER_TABLE, records - t * RECORDS_PER_TABLE);
+            try (SSTableWriter writer = new SSTableWriter(path, hintPath, config.getBlockSize(), id, id,
+                    config.getBloomFalsePositiveRate(), BlockCodecs.byName(config.getCompression()))) {
+                // 每个表覆盖一段连续的key，表之间不重叠
+                for (int i = 0; i < count; i++) {
+                    String key = key(t * RECORDS_PER_TABLE + i);
+                    writer.append(key, CommandCodec.encode(new SetCommand(key, value)), false);
+                }
+                writer.finish();
+            }
+        }
+    }
+
+    private static String key(int i) {
+        return String.format("key:%010d", i);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchUtil.delete(dir);
+    }
+
+    @Benchmark
+    public int reloadIndex() throws IOException {
+        NormalStore store = new NormalStore(dir.getPath() + File.separator, config);
+        int size = store.getIndexSize();
+        store.close();
+        return size;
+    }
+}
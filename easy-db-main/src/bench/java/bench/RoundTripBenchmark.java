@@ -0,0 +1,158 @@
+/*
+ *@Type RoundTripBenchmark.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 11:40
+ * @version
+ */
+package bench;
+
+import client.SocketClient;
+import controller.Controller;
+import controller.NioServerController;
+import controller.ServerConfig;
+import controller.ServerModeEnum;
+import controller.SocketServerController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import service.NormalStore;
+import service.StoreConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 经过loopback的客户端到服务端往返：单条get/set和100个key的mget，
+ * 服务端分别用阻塞和NIO模式，客户端的连接池大小和JMH线程数一致
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    private static final String HOST = "127.0.0.1";
+
+    @Param({"NIO", "BLOCKING"})
+    private ServerModeEnum mode;
+
+    @Param({"100"})
+    private int valueSize;
+
+    @Param({"100000"})
+    private int keyCount;
+
+    private File dir;
+
+    private NormalStore store;
+
+    private Controller controller;
+
+    private SocketClient client;
+
+    private String[] keys;
+
+    private String value;
+
+    @Setup(Level.Trial)
+    public void setup(BenchmarkParams params) throws Exception {
+        dir = BenchUtil.tempDir("easy-db-rpc-bench");
+        store = new NormalStore(dir.getPath() + File.separator, new StoreConfig());
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        ServerConfig serverConfig = new ServerConfig();
+        serverConfig.setMode(mode);
+        controller = mode == ServerModeEnum.NIO
+                ? new NioServerController(HOST, port, store, serverConfig)
+                : new SocketServerController(HOST, port, store, serverConfig);
+        Thread server = new Thread(controller::startServer, "easy-db-bench-server");
+        server.setDaemon(true);
+        server.start();
+        waitForPort(port);
+        client = new SocketClient(HOST, port, Math.max(1, params.getThreads()));
+        keys = BenchUtil.keys(keyCount);
+        Random random = new Random(42);
+        value = BenchUtil.value(random, valueSize);
+        Map<String, String> batch = new LinkedHashMap<>();
+        for (String key : keys) {
+            batch.put(key, value);
+            if (batch.size() == 1000) {
+                client.mset(batch);
+                batch.clear();
+            }
+        }
+        client.mset(batch);
+    }
+
+    private static void waitForPort(int port) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(HOST, port), 200);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("server did not start on port " + port);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        controller.stopServer();
+        store.close();
+        BenchUtil.delete(dir);
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    @Benchmark
+    public String get() {
+        return client.get(randomKey());
+    }
+
+    @Benchmark
+    public void set() {
+        client.set(randomKey(), value);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(100)
+    public List<String> mget100() {
+        List<String> batch = new ArrayList<>(100);
+        for (int i = 0; i < 100; i++) {
+            batch.add(randomKey());
+        }
+        return client.mget(batch);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *@Type StoreBenchmark.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 09:30
+ * @version
+ */
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.FsyncTypeEnum;
+import service.NormalStore;
+import service.StoreConfig;
+import service.index.IndexTypeEnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NormalStore单点读写。线程数用JMH的-t指定（bench.sh默认跑1和4），
+ * 预先写入keyCount个key，读写都在这些key上均匀随机
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreBenchmark {
+
+    @Param({"16", "256", "4096"})
+    private int valueSize;
+
+    @Param({"100000"})
+    private int keyCount;
+
+    @Param({"INTERVAL"})
+    private FsyncTypeEnum fsyncType;
+
+    @Param({"HASH"})
+    private IndexTypeEnum indexType;
+
+    @Param({"LZ4"})
+    private String compression;
+
+    private File dir;
+
+    private NormalStore store;
+
+    private String[] keys;
+
+    private String value;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = BenchUtil.tempDir("easy-db-store-bench");
+        StoreConfig config = new StoreConfig();
+        config.setFsyncType(fsyncType);
+        config.setIndexType(indexType);
+        config.setCompression(compression);
+        store = new NormalStore(dir.getPath() + File.separator, config);
+        keys = BenchUtil.keys(keyCount);
+        Random random = new Random(42);
+        value = BenchUtil.value(random, valueSize);
+        Map<String, String> batch = new LinkedHashMap<>();
+        for (String key : keys) {
+            batch.put(key, BenchUtil.value(random, valueSize));
+            if (batch.size() == 1000) {
+                store.mset(batch);
+                batch.clear();
+            }
+        }
+        store.mset(batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.out.println();
+        System.out.println("compressionRatio=" + String.format("%.2f", store.getCompressionRatio())
+                + " valueCache=" + store.getCacheStats() + " blockCache=" + store.getBlockCacheStats());
+        store.close();
+        BenchUtil.delete(dir);
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    @Benchmark
+    public void set() {
+        store.set(randomKey(), value);
+    }
+
+    @Benchmark
+    public String get() {
+        return store.get(randomKey());
+    }
+
+    @Benchmark
+    public void rm() {
+        store.rm(randomKey());
+    }
+}
@@ -7,10 +7,48 @@
  */
 package client;
 
-public interface Client {
+import dto.ScanResult;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+
+public interface Client extends Closeable {
     void set(String key, String value);
 
+    /**
+     * 写入ttlMillis毫秒后过期的值，过期时间按服务端时钟计算
+     */
+    void set(String key, String value, long ttlMillis);
+
     String get(String key);
 
     void rm(String key);
+
+    /**
+     * 批量读，结果和keys一一对应，不存在的key为null
+     */
+    List<String> mget(List<String> keys);
+
+    void mset(Map<String, String> kvs);
+
+    void mrm(List<String> keys);
+
+    /**
+     * 范围查询一页，服务端每页最多返回1000条，用nextKey继续翻页
+     */
+    ScanResult scan(String startKey, String endKey, int limit);
+
+    ScanResult prefix(String prefix, int limit);
+
+    /**
+     * 服务端的指标，只返回名字以prefix开头的，prefix为null时返回全部
+     */
+    Map<String, String> stats(String prefix);
+
+    /**
+     * 关闭客户端持有的连接
+     */
+    @Override
+    void close();
 }
@@ -0,0 +1,94 @@
+/*
+ *@Type ClientConnection.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/23 10:40
+ * @version
+ */
+package client;
+
+import dto.ActionDTO;
+import dto.RespDTO;
+import utils.FrameCodec;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 到服务端的一条长连接，同一时间只能被一个线程使用（由连接池保证）
+ */
+public class ClientConnection implements Closeable {
+    /**
+     * 响应的最大字节数
+     */
+    private static final int MAX_RESPONSE_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * 流水线一次最多发出、还没读响应的请求数，避免双方都写满socket缓冲区互相等待
+     */
+    private static final int MAX_IN_FLIGHT = 256;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    /**
+     * 复用的读写缓冲区
+     */
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(4096);
+    private ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+    private long nextId = 1;
+
+    public ClientConnection(String host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = socket.getOutputStream();
+    }
+
+    public RespDTO call(ActionDTO dto) throws IOException {
+        return pipeline(Collections.singletonList(dto)).get(0);
+    }
+
+    /**
+     * 先把一组请求写出去再依次读响应，一次往返完成多个请求，响应按请求的顺序返回
+     */
+    public List<RespDTO> pipeline(List<ActionDTO> dtos) throws IOException {
+        List<RespDTO> resps = new ArrayList<>(dtos.size());
+        for (int from = 0; from < dtos.size(); from += MAX_IN_FLIGHT) {
+            List<ActionDTO> window = dtos.subList(from, Math.min(dtos.size(), from + MAX_IN_FLIGHT));
+            writeBuffer.clear();
+            for (ActionDTO dto : window) {
+                dto.setId(nextId++);
+                writeBuffer = FrameCodec.writeRequest(writeBuffer, dto);
+            }
+            out.write(writeBuffer.array(), 0, writeBuffer.position());
+            out.flush();
+            for (ActionDTO dto : window) {
+                readBuffer = FrameCodec.readFrame(in, readBuffer, MAX_RESPONSE_BYTES);
+                if (readBuffer == null) {
+                    throw new EOFException("connection closed by server");
+                }
+                RespDTO resp = FrameCodec.decodeResponse(readBuffer);
+                if (resp.getId() != dto.getId()) {
+                    throw new IOException("response id " + resp.getId() + " does not match request " + dto.getId());
+                }
+                resps.add(resp);
+            }
+        }
+        return resps;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
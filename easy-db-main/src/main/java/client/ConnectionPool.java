@@ -0,0 +1,90 @@
+/*
+ *@Type ConnectionPool.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/23 10:55
+ * @version
+ */
+package client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 长连接池：最多maxSize条连接，用完归还复用，出错的连接丢弃
+ */
+public class ConnectionPool implements Closeable {
+    private final String host;
+    private final int port;
+    private final int maxSize;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<ClientConnection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    public ConnectionPool(String host, int port, int maxSize) {
+        this.host = host;
+        this.port = port;
+        this.maxSize = maxSize;
+        this.permits = new Semaphore(maxSize);
+    }
+
+    /**
+     * 借一条连接，全部被占用时等待
+     */
+    public ClientConnection borrow() throws IOException {
+        if (closed) {
+            throw new IOException("connection pool closed");
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for a connection", e);
+        }
+        // 后进先出，让少数连接保持活跃
+        ClientConnection connection = idle.pollFirst();
+        if (connection != null) {
+            return connection;
+        }
+        try {
+            return new ClientConnection(host, port);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 归还连接，broken为true时关闭而不复用
+     */
+    public void release(ClientConnection connection, boolean broken) {
+        if (broken || closed) {
+            closeQuietly(connection);
+        } else {
+            idle.offerFirst(connection);
+        }
+        permits.release();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ClientConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(ClientConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -10,57 +10,249 @@ package client;
 import dto.ActionDTO;
 import dto.ActionTypeEnum;
 import dto.RespDTO;
+import dto.RespStatusTypeEnum;
+import dto.ScanResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.LoggerUtil;
 
-import java.io.*;
-import java.net.Socket;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
+/**
+ * 基于长连接池的客户端，线程安全。每次操作借一条连接，用完归还，不再每次握手
+ */
 public class SocketClient implements Client {
+    private final Logger LOGGER = LoggerFactory.getLogger(SocketClient.class);
+    private final String logFormat = "[SocketClient][{}]: {}";
+    public static final int DEFAULT_POOL_SIZE = 8;
+
+    /**
+     * 批量操作拆成多个请求帧，每帧最多这么多个key，或者key和value合计这么多字节，
+     * 避免超过服务端的单帧上限
+     */
+    private static final int MULTI_CHUNK_KEYS = 512;
+    private static final int MULTI_CHUNK_BYTES = 256 * 1024;
+
     private String host;
     private int port;
+    private final ConnectionPool pool;
 
     public SocketClient(String host, int port) {
+        this(host, port, DEFAULT_POOL_SIZE);
+    }
+
+    public SocketClient(String host, int port, int poolSize) {
         this.host = host;
         this.port = port;
+        this.pool = new ConnectionPool(host, port, poolSize);
     }
 
     @Override
     public void set(String key, String value) {
-        try (Socket socket = new Socket(host, port);
-             ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
-             ObjectInputStream ois = new ObjectInputStream(socket.getInputStream())) {
-            // 传输序列化对象
-            ActionDTO dto = new ActionDTO(ActionTypeEnum.SET, key, value);
-            oos.writeObject(dto);
-            oos.flush();
-            RespDTO resp = (RespDTO) ois.readObject();
-            System.out.println("resp data: "+ resp.toString());
-            // 接收响应数据
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-        }
+        check(call(new ActionDTO(ActionTypeEnum.SET, key, value)));
+    }
+
+    @Override
+    public void set(String key, String value, long ttlMillis) {
+        ActionDTO dto = new ActionDTO(ActionTypeEnum.SETEX, key, value);
+        dto.setTtl(ttlMillis);
+        check(call(dto));
     }
 
     @Override
     public String get(String key) {
-        try (Socket socket = new Socket(host, port);
-             ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
-             ObjectInputStream ois = new ObjectInputStream(socket.getInputStream())) {
-            // 传输序列化对象
-            ActionDTO dto = new ActionDTO(ActionTypeEnum.GET, key, null);
-            oos.writeObject(dto);
-            oos.flush();
-            RespDTO resp = (RespDTO) ois.readObject();
-            System.out.println("resp data: "+ resp.toString());
-            // 接收响应数据
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-        }
-        return null;
+        return check(call(new ActionDTO(ActionTypeEnum.GET, key, null))).getValue();
     }
 
     @Override
     public void rm(String key) {
+        check(call(new ActionDTO(ActionTypeEnum.RM, key, null)));
+    }
+
+    @Override
+    public List<String> mget(List<String> keys) {
+        List<ActionDTO> dtos = new ArrayList<>();
+        for (List<String> chunk : chunk(keys, null)) {
+            dtos.add(new ActionDTO(ActionTypeEnum.MGET, chunk, null));
+        }
+        List<String> values = new ArrayList<>(keys.size());
+        for (RespDTO resp : pipeline(dtos)) {
+            values.addAll(check(resp).getValues());
+        }
+        return values;
+    }
 
+    @Override
+    public void mset(Map<String, String> kvs) {
+        List<String> keys = new ArrayList<>(kvs.keySet());
+        List<String> values = new ArrayList<>(kvs.size());
+        for (String key : keys) {
+            values.add(kvs.get(key));
+        }
+        List<ActionDTO> dtos = new ArrayList<>();
+        int from = 0;
+        for (List<String> chunk : chunk(keys, values)) {
+            dtos.add(new ActionDTO(ActionTypeEnum.MSET, chunk, values.subList(from, from + chunk.size())));
+            from += chunk.size();
+        }
+        for (RespDTO resp : pipeline(dtos)) {
+            check(resp);
+        }
     }
 
+    @Override
+    public void mrm(List<String> keys) {
+        List<ActionDTO> dtos = new ArrayList<>();
+        for (List<String> chunk : chunk(keys, null)) {
+            dtos.add(new ActionDTO(ActionTypeEnum.MRM, chunk, null));
+        }
+        for (RespDTO resp : pipeline(dtos)) {
+            check(resp);
+        }
+    }
+
+    @Override
+    public ScanResult scan(String startKey, String endKey, int limit) {
+        ActionDTO dto = new ActionDTO(ActionTypeEnum.SCAN, startKey, endKey);
+        dto.setLimit(limit);
+        return toPage(check(call(dto)));
+    }
+
+    @Override
+    public ScanResult prefix(String prefix, int limit) {
+        ActionDTO dto = new ActionDTO(ActionTypeEnum.PREFIX, prefix, null);
+        dto.setLimit(limit);
+        return toPage(check(call(dto)));
+    }
+
+    @Override
+    public Map<String, String> stats(String prefix) {
+        RespDTO resp = check(call(new ActionDTO(ActionTypeEnum.STATS, prefix, null)));
+        Map<String, String> stats = new LinkedHashMap<>();
+        for (int i = 0; i < resp.getKeys().size(); i++) {
+            stats.put(resp.getKeys().get(i), resp.getValues().get(i));
+        }
+        return stats;
+    }
+
+    /**
+     * 逐页拉取[startKey, endKey)内的所有键值对，迭代到一页的末尾才请求下一页
+     */
+    public Iterator<Map.Entry<String, String>> iterate(final String startKey, final String endKey, final int pageSize) {
+        return new Iterator<Map.Entry<String, String>>() {
+            private ScanResult page = scan(startKey, endKey, pageSize);
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                // 一页可能因为删除标记是空的，继续往后翻
+                while (i == page.getKeys().size() && page.getNextKey() != null) {
+                    page = scan(page.getNextKey(), endKey, pageSize);
+                    i = 0;
+                }
+                return i < page.getKeys().size();
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<>(
+                        page.getKeys().get(i), page.getValues().get(i));
+                i++;
+                return entry;
+            }
+        };
+    }
+
+    private static ScanResult toPage(RespDTO resp) {
+        return new ScanResult(resp.getKeys(), resp.getValues(), resp.getValue());
+    }
+
+    /**
+     * 按key个数和大致字节数切分，values可以为null
+     */
+    private static List<List<String>> chunk(List<String> keys, List<String> values) {
+        if (keys.isEmpty()) {
+            return Collections.singletonList(keys);
+        }
+        List<List<String>> chunks = new ArrayList<>();
+        int from = 0;
+        int bytes = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            int size = 8 + keys.get(i).length() * 3;
+            if (values != null && values.get(i) != null) {
+                size += values.get(i).length() * 3;
+            }
+            if (i > from && (i - from >= MULTI_CHUNK_KEYS || bytes + size > MULTI_CHUNK_BYTES)) {
+                chunks.add(keys.subList(from, i));
+                from = i;
+                bytes = 0;
+            }
+            bytes += size;
+        }
+        chunks.add(keys.subList(from, keys.size()));
+        return chunks;
+    }
+
+    /**
+     * 在同一条连接上流水线发送一组请求，只等一次往返；响应按请求顺序返回，失败的请求状态为FAIL
+     */
+    public List<RespDTO> pipeline(List<ActionDTO> dtos) {
+        ClientConnection connection = borrow();
+        boolean broken = true;
+        try {
+            List<RespDTO> resps = connection.pipeline(dtos);
+            broken = false;
+            return resps;
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("request to " + host + ":" + port + " failed", e);
+        } finally {
+            pool.release(connection, broken);
+        }
+    }
+
+    private RespDTO call(ActionDTO dto) {
+        ClientConnection connection = borrow();
+        boolean broken = true;
+        try {
+            RespDTO resp = connection.call(dto);
+            broken = false;
+            LoggerUtil.debug(LOGGER, logFormat, "call", "resp data: " + resp);
+            return resp;
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("request to " + host + ":" + port + " failed", e);
+        } finally {
+            pool.release(connection, broken);
+        }
+    }
+
+    private ClientConnection borrow() {
+        try {
+            return pool.borrow();
+        } catch (IOException e) {
+            throw new RuntimeException("connect to " + host + ":" + port + " failed", e);
+        }
+    }
+
+    private static RespDTO check(RespDTO resp) {
+        if (resp.getStatus() != RespStatusTypeEnum.SUCCESS) {
+            throw new RuntimeException("server error: " + resp.getValue());
+        }
+        return resp;
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
 }
@@ -0,0 +1,180 @@
+/*
+ *@Type ActionDispatcher.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/22 09:30
+ * @version
+ */
+package controller;
+
+import dto.ActionDTO;
+import dto.ActionTypeEnum;
+import dto.RespDTO;
+import dto.RespStatusTypeEnum;
+import dto.ScanResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import service.Store;
+import utils.LoggerUtil;
+import utils.MetricsMBean;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把请求分发到Store，阻塞模式和NIO模式共用
+ */
+public class ActionDispatcher {
+    private final Logger LOGGER = LoggerFactory.getLogger(ActionDispatcher.class);
+    private final String logFormat = "[ActionDispatcher][{}]: {}";
+
+    /**
+     * 范围查询每页最多返回的条数，客户端要得更多时按nextKey继续翻页
+     */
+    public static final int MAX_SCAN_LIMIT = 1000;
+
+    private final Store store;
+
+    private final ServerStats stats = new ServerStats();
+
+    /**
+     * 已注册的JMX MBean，停止服务时注销
+     */
+    private final List<ObjectName> mbeans = new ArrayList<>();
+
+    public ActionDispatcher(Store store) {
+        this.store = store;
+    }
+
+    /**
+     * 响应带上请求的编号，记录处理耗时；STATS本身不计入
+     */
+    public RespDTO dispatch(ActionDTO dto) {
+        long start = System.nanoTime();
+        RespDTO resp = execute(dto);
+        resp.setId(dto.getId());
+        if (dto.getType() != ActionTypeEnum.STATS) {
+            stats.getRequests().recordSince(start);
+            if (resp.getStatus() != RespStatusTypeEnum.SUCCESS) {
+                stats.failed();
+            }
+        }
+        return resp;
+    }
+
+    public ServerStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 服务端指标在前，存储指标在后
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        stats.putMetrics("server.", out);
+        out.putAll(store.metrics());
+        return out;
+    }
+
+    /**
+     * 注册 easy-db:type=Server,port=N 和 easy-db:type=Store,port=N 两个MBean
+     */
+    public synchronized void registerMBeans(int port) {
+        try {
+            mbeans.add(MetricsMBean.register("easy-db:type=Server,port=" + port, "easy-db server", () -> {
+                Map<String, Object> out = new LinkedHashMap<>();
+                stats.putMetrics("server.", out);
+                return out;
+            }));
+            mbeans.add(MetricsMBean.register("easy-db:type=Store,port=" + port, "easy-db store", store::metrics));
+        } catch (RuntimeException e) {
+            LoggerUtil.error(LOGGER, e, logFormat, "registerMBeans", "register mbeans failed");
+        }
+    }
+
+    public synchronized void unregisterMBeans() {
+        for (ObjectName name : mbeans) {
+            try {
+                MetricsMBean.unregister(name);
+            } catch (RuntimeException e) {
+                LoggerUtil.error(LOGGER, e, logFormat, "unregisterMBeans", "unregister " + name + " failed");
+            }
+        }
+        mbeans.clear();
+    }
+
+    /**
+     * 按前缀过滤指标，值都转成字符串放进响应的keys/values
+     */
+    private RespDTO statsResp(String prefix) {
+        List<String> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : metrics().entrySet()) {
+            if (prefix == null || entry.getKey().startsWith(prefix)) {
+                keys.add(entry.getKey());
+                values.add(String.valueOf(entry.getValue()));
+            }
+        }
+        RespDTO resp = new RespDTO(RespStatusTypeEnum.SUCCESS, null);
+        resp.setKeys(keys);
+        resp.setValues(values);
+        return resp;
+    }
+
+    private RespDTO execute(ActionDTO dto) {
+        try {
+            switch (dto.getType()) {
+                case GET:
+                    return new RespDTO(RespStatusTypeEnum.SUCCESS, store.get(dto.getKey()));
+                case SET:
+                    store.set(dto.getKey(), dto.getValue());
+                    return new RespDTO(RespStatusTypeEnum.SUCCESS, null);
+                case SETEX:
+                    store.set(dto.getKey(), dto.getValue(), dto.getTtl());
+                    return new RespDTO(RespStatusTypeEnum.SUCCESS, null);
+                case RM:
+                    store.rm(dto.getKey());
+                    return new RespDTO(RespStatusTypeEnum.SUCCESS, null);
+                case MGET:
+                    RespDTO resp = new RespDTO(RespStatusTypeEnum.SUCCESS, null);
+                    resp.setValues(store.mget(dto.getKeys()));
+                    return resp;
+                case MSET:
+                    List<String> keys = dto.getKeys();
+                    List<String> values = dto.getValues();
+                    if (values == null || values.size() != keys.size()) {
+                        return new RespDTO(RespStatusTypeEnum.FAIL, "MSET needs as many values as keys");
+                    }
+                    Map<String, String> kvs = new LinkedHashMap<>();
+                    for (int i = 0; i < keys.size(); i++) {
+                        kvs.put(keys.get(i), values.get(i));
+                    }
+                    store.mset(kvs);
+                    return new RespDTO(RespStatusTypeEnum.SUCCESS, null);
+                case MRM:
+                    store.mrm(dto.getKeys());
+                    return new RespDTO(RespStatusTypeEnum.SUCCESS, null);
+                case SCAN:
+                case PREFIX:
+                    int limit = Math.min(dto.getLimit(), MAX_SCAN_LIMIT);
+                    ScanResult page = dto.getType() == ActionTypeEnum.SCAN
+                            ? store.scan(dto.getKey(), dto.getValue(), limit)
+                            : store.prefix(dto.getKey(), limit);
+                    RespDTO pageResp = new RespDTO(RespStatusTypeEnum.SUCCESS, page.getNextKey());
+                    pageResp.setKeys(page.getKeys());
+                    pageResp.setValues(page.getValues());
+                    return pageResp;
+                case STATS:
+                    return statsResp(dto.getKey());
+                default:
+                    return new RespDTO(RespStatusTypeEnum.FAIL, "unknown action " + dto.getType());
+            }
+        } catch (Throwable t) {
+            LoggerUtil.error(LOGGER, t, logFormat, "dispatch", dto.toString());
+            return new RespDTO(RespStatusTypeEnum.FAIL, t.getMessage());
+        }
+    }
+}
@@ -7,6 +7,11 @@
  */
 package controller;
 
+import dto.ScanResult;
+
+import java.util.List;
+import java.util.Map;
+
 public interface Controller {
     void set(String key, String value);
 
@@ -14,5 +19,20 @@ public interface Controller {
 
     void rm(String key);
 
+    List<String> mget(List<String> keys);
+
+    void mset(Map<String, String> kvs);
+
+    void mrm(List<String> keys);
+
+    ScanResult scan(String startKey, String endKey, int limit);
+
+    ScanResult prefix(String prefix, int limit);
+
     void startServer();
+
+    /**
+     * 停止accept，等处理中的请求完成（最多drainTimeoutMs）后返回，之后再关闭Store
+     */
+    void stopServer();
 }
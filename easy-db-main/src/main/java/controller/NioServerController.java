@@ -0,0 +1,492 @@
+/*
+ *@Type NioServerController.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/22 10:10
+ * @version
+ */
+package controller;
+
+import dto.ActionDTO;
+import dto.RespDTO;
+import dto.RespStatusTypeEnum;
+import dto.ScanResult;
+import lombok.Getter;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import service.Store;
+import utils.FrameCodec;
+import utils.LoggerUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于selector的非阻塞服务端：调用startServer的线程负责accept，
+ * 连接轮流分给固定数量的事件循环线程做读写，Store调用交给有界的工作线程池，
+ * 线程数只由配置决定，和连接数无关。
+ * 协议和阻塞模式相同：长连接上收发FrameCodec的帧，同一连接的请求按顺序执行、按顺序响应
+ */
+@Setter
+@Getter
+public class NioServerController implements Controller {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(NioServerController.class);
+    private final String logFormat = "[NioServerController][{}]: {}";
+    private String host;
+    private int port;
+    private Store store;
+    private ServerConfig config;
+    private ActionDispatcher dispatcher;
+
+    /**
+     * 连接数许可，连接关闭时归还，全部归还说明没有打开的连接
+     */
+    private Semaphore connections;
+
+    private ThreadPoolExecutor workers;
+    private EventLoop[] loops;
+    private volatile boolean running;
+    private volatile ServerSocketChannel serverChannel;
+
+    public NioServerController(String host, int port, Store store, ServerConfig config) {
+        this.host = host;
+        this.port = port;
+        this.store = store;
+        this.config = config;
+        this.dispatcher = new ActionDispatcher(store);
+        this.connections = new Semaphore(config.getMaxConnections());
+    }
+
+    @Override
+    public void set(String key, String value) {
+        store.set(key, value);
+    }
+
+    @Override
+    public String get(String key) {
+        return store.get(key);
+    }
+
+    @Override
+    public void rm(String key) {
+        store.rm(key);
+    }
+
+    @Override
+    public List<String> mget(List<String> keys) {
+        return store.mget(keys);
+    }
+
+    @Override
+    public void mset(Map<String, String> kvs) {
+        store.mset(kvs);
+    }
+
+    @Override
+    public void mrm(List<String> keys) {
+        store.mrm(keys);
+    }
+
+    @Override
+    public ScanResult scan(String startKey, String endKey, int limit) {
+        return store.scan(startKey, endKey, limit);
+    }
+
+    @Override
+    public ScanResult prefix(String prefix, int limit) {
+        return store.prefix(prefix, limit);
+    }
+
+    @Override
+    public void startServer() {
+        running = true;
+        workers = new ThreadPoolExecutor(config.getWorkerThreads(), config.getWorkerThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(config.getWorkerQueueSize()),
+                namedThreads("easy-db-worker"));
+        loops = new EventLoop[config.getEventLoopThreads()];
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            this.serverChannel = serverChannel;
+            // 和阻塞模式一样监听所有网卡
+            serverChannel.bind(new InetSocketAddress(port));
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop(workers);
+                Thread thread = new Thread(loops[i], "easy-db-event-loop-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            if (config.isJmxEnabled()) {
+                dispatcher.registerMBeans(port);
+            }
+            LoggerUtil.info(LOGGER, logFormat, "startServer", "Server started (NIO), " + config);
+
+            int next = 0;
+            while (running) {
+                try {
+                    // 连接数到上限时不再accept，新连接在backlog里排队
+                    if (!connections.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                try {
+                    SocketChannel channel = serverChannel.accept();
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    loops[next++ % loops.length].register(channel);
+                } catch (IOException e) {
+                    connections.release();
+                    if (running) {
+                        LoggerUtil.error(LOGGER, e, logFormat, "startServer", "accept failed");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LoggerUtil.error(LOGGER, e, logFormat, "startServer", "server stopped");
+        }
+    }
+
+    /**
+     * 关闭监听，空闲连接直接关闭，处理中的连接写完响应后关闭；超时后关闭事件循环，剩下的连接随之关闭
+     */
+    @Override
+    public void stopServer() {
+        running = false;
+        ServerSocketChannel serverChannel = this.serverChannel;
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (loops != null) {
+            for (EventLoop loop : loops) {
+                if (loop != null) {
+                    loop.drain();
+                }
+            }
+        }
+        try {
+            if (connections.tryAcquire(config.getMaxConnections(), config.getDrainTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                connections.release(config.getMaxConnections());
+            } else {
+                LoggerUtil.info(LOGGER, logFormat, "stopServer", "drain timeout, force close connections");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (loops != null) {
+            for (EventLoop loop : loops) {
+                if (loop != null) {
+                    loop.shutdown();
+                }
+            }
+        }
+        if (workers != null) {
+            workers.shutdown();
+        }
+        dispatcher.unregisterMBeans();
+        LoggerUtil.info(LOGGER, logFormat, "stopServer", "server stopped");
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * 单线程的事件循环，连接的所有读写和状态变更都在这个线程里做，其他线程通过execute投递
+     */
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ThreadPoolExecutor workers;
+        private volatile boolean running = true;
+        /**
+         * 停止服务中，连接处理完手上的请求就关闭，只在事件循环线程里读写
+         */
+        private boolean draining;
+
+        EventLoop(ThreadPoolExecutor workers) throws IOException {
+            this.selector = Selector.open();
+            this.workers = workers;
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    Connection connection = new Connection(channel, this);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    dispatcher.getStats().connectionOpened();
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                    connections.release();
+                }
+            });
+        }
+
+        void drain() {
+            execute(() -> {
+                draining = true;
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).drain();
+                }
+            });
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            LoggerUtil.debug(LOGGER, logFormat, "eventLoop", "close connection: " + e);
+                            connection.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    LoggerUtil.error(LOGGER, e, logFormat, "eventLoop", "select failed");
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * 一个客户端长连接。读到的完整请求帧一次性交给工作线程按顺序执行，
+     * 响应拼成一块写回；写完前不再读，客户端流水线发来的后续请求留在缓冲区里等下一批
+     */
+    private final class Connection {
+        /**
+         * 一批最多执行的请求数
+         */
+        private static final int MAX_BATCH = 256;
+
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private SelectionKey key;
+        /**
+         * 连接内复用的读写缓冲区，in保持写模式
+         */
+        private ByteBuffer in = ByteBuffer.allocate(4096);
+        private ByteBuffer out = ByteBuffer.allocate(4096);
+        /**
+         * 有一批请求在执行或响应还没写完
+         */
+        private boolean busy;
+        private boolean closed;
+
+        Connection(SocketChannel channel, EventLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        void onReadable() throws IOException {
+            while (!closed) {
+                if (!in.hasRemaining() && !makeRoom()) {
+                    // 缓冲区里都是完整的帧，等正在执行的一批写回后再读
+                    return;
+                }
+                int n = channel.read(in);
+                if (n < 0) {
+                    close();
+                    return;
+                }
+                if (n == 0) {
+                    break;
+                }
+            }
+            processBuffered();
+        }
+
+        /**
+         * 缓冲区满时腾出空间。in压缩过，读位置上的帧从0开始：这一帧比缓冲区大时扩容，
+         * 上限只针对单个帧；否则缓冲区里已有完整的帧，先交给工作线程再压缩。
+         * 还有一批在执行、腾不出空间时返回false
+         */
+        private boolean makeRoom() throws IOException {
+            int len = in.getInt(0);
+            if (len <= 0 || len > config.getMaxRequestBytes()) {
+                throw new IOException("request larger than " + config.getMaxRequestBytes() + " bytes");
+            }
+            if (FrameCodec.HEADER_SIZE + len > in.capacity()) {
+                grow(FrameCodec.HEADER_SIZE + len);
+                return true;
+            }
+            processBuffered();
+            return in.hasRemaining();
+        }
+
+        private void processBuffered() throws IOException {
+            if (busy || closed) {
+                return;
+            }
+            List<ActionDTO> batch = new ArrayList<>();
+            in.flip();
+            try {
+                ByteBuffer frame;
+                while (batch.size() < MAX_BATCH
+                        && (frame = FrameCodec.nextFrame(in, config.getMaxRequestBytes())) != null) {
+                    batch.add(FrameCodec.decodeRequest(frame));
+                }
+            } finally {
+                in.compact();
+            }
+            if (batch.isEmpty()) {
+                if (loop.draining) {
+                    close();
+                }
+                return;
+            }
+            busy = true;
+            key.interestOps(0);
+            try {
+                loop.workers.execute(() -> {
+                    List<RespDTO> resps = new ArrayList<>(batch.size());
+                    for (ActionDTO dto : batch) {
+                        resps.add(dispatcher.dispatch(dto));
+                    }
+                    loop.execute(() -> reply(resps));
+                });
+            } catch (RejectedExecutionException e) {
+                dispatcher.getStats().rejected(batch.size());
+                List<RespDTO> resps = new ArrayList<>(batch.size());
+                for (ActionDTO dto : batch) {
+                    RespDTO resp = new RespDTO(RespStatusTypeEnum.FAIL, "server busy");
+                    resp.setId(dto.getId());
+                    resps.add(resp);
+                }
+                reply(resps);
+            }
+        }
+
+        /**
+         * 扩容到至少能放下frameSize字节的一帧，按两倍增长但不超过单帧上限
+         */
+        private void grow(int frameSize) {
+            int max = config.getMaxRequestBytes() + FrameCodec.HEADER_SIZE;
+            int capacity = (int) Math.max(frameSize, Math.min((long) in.capacity() * 2, max));
+            ByteBuffer bigger = ByteBuffer.allocate(capacity);
+            in.flip();
+            bigger.put(in);
+            in = bigger;
+        }
+
+        /**
+         * 在事件循环线程里执行
+         */
+        private void reply(List<RespDTO> resps) {
+            if (closed) {
+                return;
+            }
+            try {
+                out.clear();
+                for (RespDTO resp : resps) {
+                    out = FrameCodec.writeResponse(out, resp);
+                }
+                out.flip();
+                key.interestOps(SelectionKey.OP_WRITE);
+                onWritable();
+            } catch (IOException | RuntimeException e) {
+                LoggerUtil.debug(LOGGER, logFormat, "reply", "close connection: " + e);
+                close();
+            }
+        }
+
+        void onWritable() throws IOException {
+            channel.write(out);
+            if (out.hasRemaining()) {
+                return;
+            }
+            busy = false;
+            key.interestOps(SelectionKey.OP_READ);
+            // 流水线发来的请求可能已经在缓冲区里了
+            processBuffered();
+        }
+
+        /**
+         * 停止服务时调用，空闲连接直接关闭，忙的连接写完当前响应后关闭
+         */
+        void drain() {
+            if (!busy) {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            dispatcher.getStats().connectionClosed();
+            connections.release();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *@Type ServerConfig.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/22 09:45
+ * @version
+ */
+package controller;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+@Setter
+@Getter
+public class ServerConfig {
+    public static final String PREFIX = "server.";
+
+    /**
+     * 服务端模式
+     */
+    private ServerModeEnum mode = ServerModeEnum.BLOCKING;
+
+    /**
+     * 同时处理的最大连接数，超过时暂停accept，连接留在backlog里等待
+     */
+    private int maxConnections = 10000;
+
+    /**
+     * 停止服务时等待处理中的连接结束的时间（毫秒），超时后强制关闭
+     */
+    private long drainTimeoutMs = 5000L;
+
+    /**
+     * EXECUTOR模式下运行在Java 21+时使用虚拟线程，每个连接一个
+     */
+    private boolean virtualThreads = true;
+
+    /**
+     * EXECUTOR模式下没有虚拟线程时平台线程池的大小
+     */
+    private int executorThreads = 200;
+
+    /**
+     * NIO模式下的事件循环线程数，只做网络读写
+     */
+    private int eventLoopThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * NIO模式下执行Store调用的工作线程数
+     */
+    private int workerThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * 工作线程池的队列长度，满了直接回复失败
+     */
+    private int workerQueueSize = 1024;
+
+    /**
+     * 单个请求的最大字节数，超过就断开连接
+     */
+    private int maxRequestBytes = 1024 * 1024;
+
+    /**
+     * 启动时把服务端和存储的指标注册为JMX MBean
+     */
+    private boolean jmxEnabled = true;
+
+    /**
+     * 从classpath读取配置，文件不存在时全部用默认值
+     */
+    public static ServerConfig load(String resource) {
+        Properties properties = new Properties();
+        try (InputStream in = ServerConfig.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * 读取 server.mode、server.eventLoopThreads 等配置项，缺省的保持默认值
+     */
+    public static ServerConfig fromProperties(Properties properties) {
+        ServerConfig config = new ServerConfig();
+        String mode = properties.getProperty(PREFIX + "mode");
+        if (mode != null) {
+            config.setMode(ServerModeEnum.valueOf(mode.trim().toUpperCase()));
+        }
+        config.setMaxConnections(intProperty(properties, "maxConnections", config.getMaxConnections()));
+        config.setDrainTimeoutMs(intProperty(properties, "drainTimeoutMs", (int) config.getDrainTimeoutMs()));
+        String virtualThreads = properties.getProperty(PREFIX + "virtualThreads");
+        if (virtualThreads != null) {
+            config.setVirtualThreads(Boolean.parseBoolean(virtualThreads.trim()));
+        }
+        config.setExecutorThreads(intProperty(properties, "executorThreads", config.getExecutorThreads()));
+        config.setEventLoopThreads(intProperty(properties, "eventLoopThreads", config.getEventLoopThreads()));
+        config.setWorkerThreads(intProperty(properties, "workerThreads", config.getWorkerThreads()));
+        config.setWorkerQueueSize(intProperty(properties, "workerQueueSize", config.getWorkerQueueSize()));
+        config.setMaxRequestBytes(intProperty(properties, "maxRequestBytes", config.getMaxRequestBytes()));
+        String jmxEnabled = properties.getProperty(PREFIX + "jmxEnabled");
+        if (jmxEnabled != null) {
+            config.setJmxEnabled(Boolean.parseBoolean(jmxEnabled.trim()));
+        }
+        return config;
+    }
+
+    private static int intProperty(Properties properties, String name, int defaultValue) {
+        String value = properties.getProperty(PREFIX + name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    @Override
+    public String toString() {
+        return "ServerConfig{" +
+                "mode=" + mode +
+                ", maxConnections=" + maxConnections +
+                ", drainTimeoutMs=" + drainTimeoutMs +
+                ", virtualThreads=" + virtualThreads +
+                ", executorThreads=" + executorThreads +
+                ", eventLoopThreads=" + eventLoopThreads +
+                ", workerThreads=" + workerThreads +
+                ", workerQueueSize=" + workerQueueSize +
+                ", maxRequestBytes=" + maxRequestBytes +
+                ", jmxEnabled=" + jmxEnabled +
+                '}';
+    }
+}
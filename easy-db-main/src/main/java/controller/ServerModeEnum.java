@@ -0,0 +1,23 @@
+/*
+ *@Type ServerModeEnum.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/22 09:40
+ * @version
+ */
+package controller;
+
+public enum ServerModeEnum {
+    /*
+     * 每个连接一个线程
+     * */
+    BLOCKING,
+    /*
+     * 阻塞的SocketServerHandler交给ExecutorService执行，21+上用虚拟线程
+     * */
+    EXECUTOR,
+    /*
+     * selector事件循环 + 有界工作线程池，线程数和连接数无关
+     * */
+    NIO
+}
@@ -0,0 +1,88 @@
+/*
+ *@Type ServerStats.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/28 11:00
+ * @version
+ */
+package controller;
+
+import utils.ConcurrentHistogram;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端的连接和请求指标，阻塞模式和NIO模式共用
+ */
+public class ServerStats {
+    /**
+     * 累计接受的连接数
+     */
+    private final LongAdder accepted = new LongAdder();
+
+    /**
+     * 当前打开的连接数
+     */
+    private final LongAdder activeConnections = new LongAdder();
+
+    /**
+     * 请求在服务端的处理耗时（解码后到生成响应），不含STATS
+     */
+    private final ConcurrentHistogram requests = new ConcurrentHistogram();
+
+    /**
+     * 返回失败的请求数
+     */
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * NIO模式下工作线程池满、直接回复busy的请求数
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    void connectionOpened() {
+        accepted.increment();
+        activeConnections.increment();
+    }
+
+    void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    void rejected(int count) {
+        rejected.add(count);
+    }
+
+    void failed() {
+        failed.increment();
+    }
+
+    ConcurrentHistogram getRequests() {
+        return requests;
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getActiveConnections() {
+        return activeConnections.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public void putMetrics(String prefix, Map<String, Object> out) {
+        out.put(prefix + "connections.accepted", getAccepted());
+        out.put(prefix + "connections.active", getActiveConnections());
+        requests.putMetrics(prefix + "requests", out);
+        out.put(prefix + "requests.failed", getFailed());
+        out.put(prefix + "requests.rejected", getRejected());
+    }
+}
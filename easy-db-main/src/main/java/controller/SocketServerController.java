@@ -7,18 +7,28 @@
  */
 package controller;
 
+import dto.ScanResult;
 import lombok.Getter;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import service.NormalStore;
 import service.Store;
 import utils.LoggerUtil;
 
-import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Setter
 @Getter
@@ -29,46 +39,219 @@ public class SocketServerController implements Controller {
     private String host;
     private int port;
     private Store store;
+    private ActionDispatcher dispatcher;
+    private ServerConfig config;
+
+    /**
+     * EXECUTOR模式下执行连接的线程池，BLOCKING模式为null
+     */
+    private ExecutorService executor;
+
+    /**
+     * 连接数许可，全部归还说明没有处理中的连接
+     */
+    private Semaphore connections;
+
+    /**
+     * 许可总数，退回固定大小的线程池时不超过线程数
+     */
+    private int maxConnections;
+
+    /**
+     * 处理中的连接，排空超时后强制关闭
+     */
+    private final Set<SocketServerHandler> activeHandlers = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running;
+    private volatile ServerSocket serverSocket;
 
     public SocketServerController(String host, int port, Store store) {
+        this(host, port, store, new ServerConfig());
+    }
+
+    public SocketServerController(String host, int port, Store store, ServerConfig config) {
         this.host = host;
         this.port = port;
         this.store = store;
+        this.config = config;
+        this.dispatcher = new ActionDispatcher(store);
+        this.maxConnections = config.getMaxConnections();
+        this.connections = new Semaphore(maxConnections);
     }
 
     @Override
     public void set(String key, String value) {
-
+        store.set(key, value);
     }
 
     @Override
     public String get(String key) {
-        return null;
+        return store.get(key);
     }
 
     @Override
     public void rm(String key) {
+        store.rm(key);
+    }
 
+    @Override
+    public List<String> mget(List<String> keys) {
+        return store.mget(keys);
+    }
+
+    @Override
+    public void mset(Map<String, String> kvs) {
+        store.mset(kvs);
+    }
+
+    @Override
+    public void mrm(List<String> keys) {
+        store.mrm(keys);
+    }
+
+    @Override
+    public ScanResult scan(String startKey, String endKey, int limit) {
+        return store.scan(startKey, endKey, limit);
+    }
+
+    @Override
+    public ScanResult prefix(String prefix, int limit) {
+        return store.prefix(prefix, limit);
     }
 
     @Override
     public void startServer() {
+        running = true;
+        if (config.getMode() == ServerModeEnum.EXECUTOR) {
+            executor = newExecutor();
+        }
         try (ServerSocket serverSocket = new ServerSocket(port)) {
+            this.serverSocket = serverSocket;
+            if (config.isJmxEnabled()) {
+                dispatcher.registerMBeans(port);
+            }
             LoggerUtil.info(LOGGER, logFormat,"startServer","Server started, waiting for connections...");
 
-            while (true) {
+            while (running) {
+                try {
+                    // 连接数到上限时不再accept，新连接在backlog里排队
+                    if (!connections.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
                 try {
                     Socket socket = serverSocket.accept();
-                    LoggerUtil.info(LOGGER, logFormat,"startServer","New client connected");
-                    // 为每个客户端连接创建一个新的线程
-                    new Thread(new SocketServerHandler(socket, store)).start();
+                    LoggerUtil.debug(LOGGER, logFormat,"startServer","New client connected");
+                    dispatch(socket);
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    connections.release();
+                    if (running) {
+                        LoggerUtil.error(LOGGER, e, logFormat, "startServer", "accept failed");
+                    }
                 }
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            LoggerUtil.error(LOGGER, e, logFormat, "startServer", "server stopped");
+        }
+    }
+
+    private void dispatch(Socket socket) {
+        SocketServerHandler handler = new SocketServerHandler(socket, dispatcher, config.getMaxRequestBytes());
+        activeHandlers.add(handler);
+        dispatcher.getStats().connectionOpened();
+        Runnable task = () -> {
+            try {
+                handler.run();
+            } finally {
+                activeHandlers.remove(handler);
+                dispatcher.getStats().connectionClosed();
+                connections.release();
+            }
+        };
+        if (executor == null) {
+            // 为每个客户端连接创建一个新的线程
+            new Thread(task).start();
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 正在停止
+            activeHandlers.remove(handler);
+            dispatcher.getStats().connectionClosed();
+            connections.release();
+            handler.forceClose();
+        }
+    }
+
+    /**
+     * Java 21+ 用虚拟线程，每个连接一个，阻塞读写只占用很少的内存；
+     * 源码保持1.8，通过反射查找newVirtualThreadPerTaskExecutor，找不到时退回固定大小的平台线程池。
+     * 长连接整个生命周期占一个线程，退回线程池时连接数上限降到线程数，
+     * 多出的连接在accept处等待，而不是被接受后在队列里无限期挂起
+     */
+    private ExecutorService newExecutor() {
+        if (config.isVirtualThreads()) {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                LoggerUtil.info(LOGGER, logFormat, "newExecutor", "using virtual threads");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                LoggerUtil.info(LOGGER, logFormat, "newExecutor", "virtual threads unavailable on Java "
+                        + System.getProperty("java.version"));
+            }
         }
+        maxConnections = Math.min(config.getMaxConnections(), config.getExecutorThreads());
+        connections = new Semaphore(maxConnections);
+        LoggerUtil.info(LOGGER, logFormat, "newExecutor", "fall back to " + config.getExecutorThreads()
+                + " platform threads, max connections " + maxConnections);
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(config.getExecutorThreads(), r -> {
+            Thread t = new Thread(r, "easy-db-conn-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
 
+    /**
+     * 关闭监听，通知长连接处理完当前请求后退出，
+     * 等所有连接结束再返回，超时则强制关闭剩下的连接
+     */
+    @Override
+    public void stopServer() {
+        running = false;
+        ServerSocket serverSocket = this.serverSocket;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException ignored) {
+            }
+        }
+        for (SocketServerHandler handler : activeHandlers) {
+            handler.drain();
+        }
+        boolean drained = false;
+        try {
+            drained = connections.tryAcquire(maxConnections, config.getDrainTimeoutMs(), TimeUnit.MILLISECONDS);
+            if (drained) {
+                connections.release(maxConnections);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!drained) {
+            LoggerUtil.info(LOGGER, logFormat, "stopServer", "force close " + activeHandlers.size() + " connections");
+            for (SocketServerHandler handler : activeHandlers) {
+                handler.forceClose();
+            }
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        dispatcher.unregisterMBeans();
+        LoggerUtil.info(LOGGER, logFormat, "stopServer", "server stopped");
     }
 }
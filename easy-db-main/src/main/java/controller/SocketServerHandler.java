@@ -8,61 +8,80 @@
 package controller;
 
 import dto.ActionDTO;
-import dto.ActionTypeEnum;
 import dto.RespDTO;
-import dto.RespStatusTypeEnum;
-import service.NormalStore;
-import service.Store;
+import utils.FrameCodec;
 import utils.LoggerUtil;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
+/**
+ * 处理一个长连接：按顺序读请求帧、执行、写响应帧，直到客户端关闭连接。
+ * 客户端流水线发来的请求都读完了才flush，多个响应合并成一次写
+ */
 public class SocketServerHandler implements Runnable {
     private final Logger LOGGER = LoggerFactory.getLogger(SocketServerHandler.class);
+    private static final int BUFFER_SIZE = 4096;
     private Socket socket;
-    private Store store;
+    private ActionDispatcher dispatcher;
+    private int maxRequestBytes;
+
+    /**
+     * 正在等下一个请求（帧边界），停止服务时可以直接关闭
+     */
+    private volatile boolean idle;
+    private volatile boolean stopping;
 
-    public SocketServerHandler(Socket socket, Store store) {
+    public SocketServerHandler(Socket socket, ActionDispatcher dispatcher, int maxRequestBytes) {
         this.socket = socket;
-        this.store = store;
+        this.dispatcher = dispatcher;
+        this.maxRequestBytes = maxRequestBytes;
     }
 
     @Override
     public void run() {
-        try (ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
-             ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream())) {
-
-            // 接收序列化对象
-            ActionDTO dto = (ActionDTO) ois.readObject();
-            LoggerUtil.debug(LOGGER, "[SocketServerHandler][ActionDTO]: {}", dto.toString());
-            System.out.println("" + dto.toString());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             OutputStream out = socket.getOutputStream()) {
+            socket.setTcpNoDelay(true);
+            // 连接内复用的读写缓冲区
+            ByteBuffer frame = ByteBuffer.allocate(BUFFER_SIZE);
+            ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+            while (true) {
+                idle = true;
+                if (stopping) {
+                    break;
+                }
+                frame = FrameCodec.readFrame(in, frame, maxRequestBytes);
+                if (frame == null) {
+                    break;
+                }
+                idle = false;
+                // 解码请求帧
+                ActionDTO dto = FrameCodec.decodeRequest(frame);
+                // 直接传对象，关闭debug时不会拼接字符串
+                LoggerUtil.debug(LOGGER, "[SocketServerHandler][ActionDTO]: {}", dto);
 
-            // 处理命令逻辑(TODO://改成可动态适配的模式)
-            if (dto.getType() == ActionTypeEnum.GET) {
-                String value = this.store.get(dto.getKey());
-                LoggerUtil.debug(LOGGER, "[SocketServerHandler][run]: {}", "get action resp" + dto.toString());
-                RespDTO resp = new RespDTO(RespStatusTypeEnum.SUCCESS, value);
-                oos.writeObject(resp);
-                oos.flush();
+                // 处理命令逻辑，交给和NIO模式共用的分发器
+                RespDTO resp = dispatcher.dispatch(dto);
+                LoggerUtil.debug(LOGGER, "[SocketServerHandler][run]: {} action resp {}", dto.getType(), resp);
+                pending = FrameCodec.writeResponse(pending, resp);
+                if (in.available() == 0) {
+                    out.write(pending.array(), 0, pending.position());
+                    pending.clear();
+                }
             }
-            if (dto.getType() == ActionTypeEnum.SET) {
-                this.store.set(dto.getKey(), dto.getValue());
-                LoggerUtil.debug(LOGGER, "[SocketServerHandler][run]: {}", "set action resp" + dto.toString());
-                RespDTO resp = new RespDTO(RespStatusTypeEnum.SUCCESS, null);
-                oos.writeObject(resp);
-                oos.flush();
+            if (pending.position() > 0) {
+                out.write(pending.array(), 0, pending.position());
             }
-            if (dto.getType() == ActionTypeEnum.RM) {
-                this.store.rm(dto.getKey());
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                LoggerUtil.debug(LOGGER, "[SocketServerHandler][run]: {}", "close connection: " + e);
             }
-
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
         } finally {
             try {
                 socket.close();
@@ -72,5 +91,25 @@ public class SocketServerHandler implements Runnable {
         }
     }
 
+    /**
+     * 停止服务：空闲的连接关闭读方向让run退出，处理中的连接写完当前响应后退出
+     */
+    public void drain() {
+        stopping = true;
+        if (idle) {
+            try {
+                socket.shutdownInput();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public void forceClose() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
 
 }
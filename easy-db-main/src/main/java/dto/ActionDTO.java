@@ -11,13 +11,31 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.io.Serializable;
+import java.util.List;
 
 @Setter
 @Getter
 public class ActionDTO implements Serializable {
+    /**
+     * 请求编号，同一连接上流水线发送多个请求时用来对应响应
+     */
+    private long id;
     private ActionTypeEnum type;
     private String key;
     private String value;
+    /**
+     * 批量操作的key和value，MSET时两者一一对应
+     */
+    private List<String> keys;
+    private List<String> values;
+    /**
+     * SCAN和PREFIX的每页条数
+     */
+    private int limit;
+    /**
+     * SETEX的过期时长（毫秒）
+     */
+    private long ttl;
 
     public ActionDTO(ActionTypeEnum type, String key, String value) {
         this.type = type;
@@ -25,12 +43,23 @@ public class ActionDTO implements Serializable {
         this.value = value;
     }
 
+    public ActionDTO(ActionTypeEnum type, List<String> keys, List<String> values) {
+        this.type = type;
+        this.keys = keys;
+        this.values = values;
+    }
+
     @Override
     public String toString() {
         return "ActionDTO{" +
-                "type=" + type +
+                "id=" + id +
+                ", type=" + type +
                 ", key='" + key + '\'' +
                 ", value='" + value + '\'' +
+                ", keys=" + keys +
+                ", values=" + values +
+                ", limit=" + limit +
+                ", ttl=" + ttl +
                 '}';
     }
 }
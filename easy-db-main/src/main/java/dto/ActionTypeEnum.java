@@ -11,13 +11,87 @@ public enum ActionTypeEnum {
     /*
      * 增、改
      * */
-    SET,
+    SET((byte) 1),
     /*
      * 删
      * */
-    RM,
+    RM((byte) 2),
     /*
     * 查
     * */
-    GET
+    GET((byte) 3),
+    /*
+     * 批量查
+     * */
+    MGET((byte) 4, true),
+    /*
+     * 批量增、改
+     * */
+    MSET((byte) 5, true),
+    /*
+     * 批量删
+     * */
+    MRM((byte) 6, true),
+    /*
+     * 范围查，key为起始key（含），value为结束key（不含，null表示不限）
+     * */
+    SCAN((byte) 7),
+    /*
+     * 前缀查，key为前缀
+     * */
+    PREFIX((byte) 8),
+    /*
+     * 查服务端和存储的指标，key为指标名前缀（null表示全部），响应的keys/values是指标名和值
+     * */
+    STATS((byte) 9),
+    /*
+     * 带过期时间的增、改，请求里多带一个过期时长（毫秒）
+     * */
+    SETEX((byte) 10);
+
+    /**
+     * 协议里的操作码，不依赖枚举顺序
+     */
+    private final byte code;
+
+    /**
+     * 批量操作，请求里带keys/values列表而不是单个key/value
+     */
+    private final boolean multi;
+
+    ActionTypeEnum(byte code) {
+        this(code, false);
+    }
+
+    ActionTypeEnum(byte code, boolean multi) {
+        this.code = code;
+        this.multi = multi;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public boolean isMulti() {
+        return multi;
+    }
+
+    /**
+     * 范围查询，请求里多带一个每页条数，响应是一页结果
+     */
+    public boolean isScan() {
+        return this == SCAN || this == PREFIX;
+    }
+
+    /**
+     * 未知的操作码返回null
+     */
+    public static ActionTypeEnum fromCode(byte code) {
+        for (ActionTypeEnum type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        return null;
+    }
 }
\ No newline at end of file
@@ -11,12 +11,25 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.io.Serializable;
+import java.util.List;
 
 @Setter
 @Getter
 public class RespDTO implements Serializable {
+    /**
+     * 对应请求的编号
+     */
+    private long id;
     private RespStatusTypeEnum status;
     private String value;
+    /**
+     * MGET的结果，和请求的keys一一对应；SCAN和PREFIX时和keys一一对应
+     */
+    private List<String> values;
+    /**
+     * SCAN和PREFIX查到的key，此时value是下一页的起始key
+     */
+    private List<String> keys;
 
     public RespDTO(RespStatusTypeEnum status, String value) {
         this.status = status;
@@ -26,8 +39,11 @@ public class RespDTO implements Serializable {
     @Override
     public String toString() {
         return "RespDTO{" +
-                "status=" + status +
+                "id=" + id +
+                ", status=" + status +
                 ", value='" + value + '\'' +
+                ", values=" + values +
+                ", keys=" + keys +
                 '}';
     }
 }
@@ -11,10 +11,35 @@ public enum RespStatusTypeEnum {
     /*
     * 成功
     * */
-    SUCCESS,
+    SUCCESS((byte) 0),
 
     /*
     * 失败
     * */
-    FAIL
+    FAIL((byte) 1);
+
+    /**
+     * 协议里的状态码
+     */
+    private final byte code;
+
+    RespStatusTypeEnum(byte code) {
+        this.code = code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * 未知的状态码返回null
+     */
+    public static RespStatusTypeEnum fromCode(byte code) {
+        for (RespStatusTypeEnum status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        return null;
+    }
 }
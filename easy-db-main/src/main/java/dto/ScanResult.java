@@ -0,0 +1,62 @@
+/*
+ *@Type ScanResult.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/24 16:10
+ * @version
+ */
+package dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * 范围查询的一页结果，keys升序，和values一一对应。
+ * nextKey是下一页的起始key，为null表示范围已经读完；页内是同一时刻的快照
+ */
+@Setter
+@Getter
+public class ScanResult {
+    private List<String> keys;
+    private List<String> values;
+    private String nextKey;
+
+    public ScanResult(List<String> keys, List<String> values, String nextKey) {
+        this.keys = keys;
+        this.values = values;
+        this.nextKey = nextKey;
+    }
+
+    /**
+     * 前缀查询对应的结束key（不含）：大于所有以prefix开头的字符串的最小值，
+     * prefix为空或全是最大字符时没有上界，返回null
+     */
+    public static String prefixEnd(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+
+    /**
+     * 紧跟在key之后的最小key，用作下一页的起点
+     */
+    public static String successor(String key) {
+        return key + '\u0000';
+    }
+
+    @Override
+    public String toString() {
+        return "ScanResult{" +
+                "keys=" + keys +
+                ", values=" + values +
+                ", nextKey='" + nextKey + '\'' +
+                '}';
+    }
+}
@@ -17,8 +17,9 @@ public class SocketClientUsage {
         Client client = new SocketClient(host, port);
 //        client.get("zsy1");
         client.set("zsy12","for test");
-        client.get("zsy12");
+        System.out.println(client.get("zsy12"));
         client.rm("zsy12");
-        client.get("zsy12");
+        System.out.println(client.get("zsy12"));
+        client.close();
     }
 }
\ No newline at end of file
@@ -7,19 +7,44 @@
  */
 package example;
 
+import controller.Controller;
+import controller.NioServerController;
+import controller.ServerConfig;
+import controller.ServerModeEnum;
 import controller.SocketServerController;
 import service.NormalStore;
+import service.ShardedStore;
 import service.Store;
+import service.StoreConfig;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 public class SocketServerUsage {
     public static void main(String[] args) {
         String host = "localhost";
         int port = 12345;
-        String dataDir = "data"+ File.separator;
-        Store store = new NormalStore(dataDir);
-        SocketServerController controller = new SocketServerController(host, port, store);
+        // store.properties里的store.shards或store.dataDirs大于一个时按key分片到多个NormalStore
+        StoreConfig storeConfig = StoreConfig.load("store.properties");
+        List<String> dataDirs = storeConfig.shardDirs();
+        Store store = dataDirs.size() > 1
+                ? new ShardedStore(dataDirs, storeConfig)
+                : new NormalStore(dataDirs.get(0) + File.separator, storeConfig);
+        // server.properties里的server.mode选择阻塞、线程池（虚拟线程）或NIO模式
+        ServerConfig serverConfig = ServerConfig.load("server.properties");
+        Controller controller = serverConfig.getMode() == ServerModeEnum.NIO
+                ? new NioServerController(host, port, store, serverConfig)
+                : new SocketServerController(host, port, store, serverConfig);
+        // 退出时先排空处理中的连接，再关闭Store落盘
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            controller.stopServer();
+            try {
+                store.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "easy-db-shutdown"));
         controller.startServer();
     }
 }
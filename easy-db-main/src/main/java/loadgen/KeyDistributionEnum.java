@@ -0,0 +1,23 @@
+/*
+ *@Type KeyDistributionEnum.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 16:35
+ * @version
+ */
+package loadgen;
+
+public enum KeyDistributionEnum {
+    /*
+     * 所有key等概率
+     * */
+    UNIFORM,
+    /*
+     * zipf分布，少数热点key占大部分请求，热点打散在整个key空间
+     * */
+    ZIPFIAN,
+    /*
+     * zipf分布，但最近插入的key最热
+     * */
+    LATEST
+}
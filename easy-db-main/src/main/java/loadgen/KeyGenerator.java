@@ -0,0 +1,111 @@
+/*
+ *@Type KeyGenerator.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 16:50
+ * @version
+ */
+package loadgen;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按分布挑选要访问的记录编号，编号再映射成key。线程安全，随机数由调用方的线程提供。
+ * zipf分布用YCSB的算法（Gray等人的快速生成法），初始化时算一次zeta(n)
+ */
+public class KeyGenerator {
+
+    public static final double ZIPFIAN_CONSTANT = 0.99;
+
+    private final KeyDistributionEnum distribution;
+
+    /**
+     * 已插入的记录数，插入操作从这里领新编号，读最新的分布也以它为基准
+     */
+    private final AtomicLong inserted;
+
+    private final long items;
+    private final double theta;
+    private final double zetan;
+    private final double alpha;
+    private final double eta;
+
+    public KeyGenerator(KeyDistributionEnum distribution, long recordCount) {
+        this.distribution = distribution;
+        this.inserted = new AtomicLong(recordCount);
+        this.items = Math.max(recordCount, 2);
+        this.theta = ZIPFIAN_CONSTANT;
+        this.zetan = zeta(items, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    /**
+     * 返回[0, items)内的zipf分布值，0最热
+     */
+    private long nextZipf(Random random) {
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    /**
+     * 要读或更新的已有记录编号
+     */
+    public long next(Random random) {
+        long count = inserted.get();
+        switch (distribution) {
+            case UNIFORM:
+                return (long) (random.nextDouble() * count);
+            case LATEST:
+                return Math.max(0, count - 1 - nextZipf(random));
+            default:
+                // 热点编号打散到整个key空间，不然热点全挤在key的开头
+                return Long.remainderUnsigned(fnv64(nextZipf(random)), Math.min(items, count));
+        }
+    }
+
+    /**
+     * 插入操作领一个新的记录编号
+     */
+    public long nextInsert() {
+        return inserted.getAndIncrement();
+    }
+
+    public long getInserted() {
+        return inserted.get();
+    }
+
+    /**
+     * 记录编号对应的key。和YCSB默认的hashed插入顺序一样，先哈希再拼接，
+     * 相邻编号的key在键空间里是分散的
+     */
+    public static String keyOf(long keyNum) {
+        return "user" + Long.toUnsignedString(fnv64(keyNum));
+    }
+
+    static long fnv64(long value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < 8; i++) {
+            h ^= value & 0xff;
+            h *= 0x100000001b3L;
+            value >>>= 8;
+        }
+        return h;
+    }
+}
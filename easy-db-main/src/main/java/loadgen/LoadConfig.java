@@ -0,0 +1,189 @@
+/*
+ *@Type LoadConfig.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 17:05
+ * @version
+ */
+package loadgen;
+
+import controller.ServerModeEnum;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Properties;
+
+@Setter
+@Getter
+public class LoadConfig {
+
+    /**
+     * 服务端地址，embedded为true时忽略
+     */
+    private String host = "localhost";
+
+    private int port = 12345;
+
+    /**
+     * 在本进程里起一个服务端，数据放在临时目录，压测结束后删除
+     */
+    private boolean embedded = true;
+
+    /**
+     * 内置服务端的模式
+     */
+    private ServerModeEnum serverMode = ServerModeEnum.BLOCKING;
+
+    private Workload workload = Workload.A;
+
+    /**
+     * 各操作的比例，默认取workload的，单独指定时覆盖
+     */
+    private double readProportion;
+    private double updateProportion;
+    private double insertProportion;
+    private double scanProportion;
+    private double readModifyWriteProportion;
+
+    private KeyDistributionEnum distribution;
+
+    /**
+     * 装载阶段写入的记录数
+     */
+    private long recordCount = 100000;
+
+    private int valueSize = 100;
+
+    /**
+     * scan的长度在[1, maxScanLength]内均匀分布
+     */
+    private int maxScanLength = 100;
+
+    /**
+     * 并发的客户端线程数，也是连接池大小
+     */
+    private int threads = 8;
+
+    /**
+     * 目标吞吐（次/秒），大于0时开环：按计划时间发请求，延迟从计划时间算起，
+     * 服务端变慢时不会少发请求，避免协调遗漏；为0时闭环，每个线程上一个请求返回就发下一个
+     */
+    private int targetRate;
+
+    private int warmupSeconds = 5;
+
+    private int durationSeconds = 30;
+
+    /**
+     * 为false时跳过装载，直接压已有数据
+     */
+    private boolean load = true;
+
+    /**
+     * 结果另存为JSON的文件，为空时只打印
+     */
+    private String output;
+
+    public LoadConfig() {
+        applyWorkload(workload);
+    }
+
+    private void applyWorkload(Workload workload) {
+        this.workload = workload;
+        this.readProportion = workload.getReadProportion();
+        this.updateProportion = workload.getUpdateProportion();
+        this.insertProportion = workload.getInsertProportion();
+        this.scanProportion = workload.getScanProportion();
+        this.readModifyWriteProportion = workload.getReadModifyWriteProportion();
+        this.distribution = workload.getDistribution();
+    }
+
+    /**
+     * 命令行参数形如 workload=B threads=16 targetRate=20000
+     */
+    public static LoadConfig fromArgs(String[] args) {
+        Properties properties = new Properties();
+        for (String arg : args) {
+            String text = arg.startsWith("--") ? arg.substring(2) : arg;
+            int eq = text.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("expected name=value: " + arg);
+            }
+            properties.setProperty(text.substring(0, eq).trim(), text.substring(eq + 1).trim());
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * 先按workload取默认的比例和分布，再用单独指定的项覆盖
+     */
+    public static LoadConfig fromProperties(Properties properties) {
+        LoadConfig config = new LoadConfig();
+        String workload = properties.getProperty("workload");
+        if (workload != null) {
+            config.applyWorkload(Workload.valueOf(workload.toUpperCase()));
+        }
+        config.setHost(properties.getProperty("host", config.getHost()));
+        config.setPort(Integer.parseInt(properties.getProperty("port", String.valueOf(config.getPort()))));
+        config.setEmbedded(Boolean.parseBoolean(properties.getProperty("embedded", String.valueOf(config.isEmbedded()))));
+        String serverMode = properties.getProperty("serverMode");
+        if (serverMode != null) {
+            config.setServerMode(ServerModeEnum.valueOf(serverMode.toUpperCase()));
+        }
+        config.setReadProportion(doubleProperty(properties, "readProportion", config.getReadProportion()));
+        config.setUpdateProportion(doubleProperty(properties, "updateProportion", config.getUpdateProportion()));
+        config.setInsertProportion(doubleProperty(properties, "insertProportion", config.getInsertProportion()));
+        config.setScanProportion(doubleProperty(properties, "scanProportion", config.getScanProportion()));
+        config.setReadModifyWriteProportion(doubleProperty(properties, "readModifyWriteProportion",
+                config.getReadModifyWriteProportion()));
+        String distribution = properties.getProperty("distribution");
+        if (distribution != null) {
+            config.setDistribution(KeyDistributionEnum.valueOf(distribution.toUpperCase()));
+        }
+        config.setRecordCount(Long.parseLong(properties.getProperty("recordCount", String.valueOf(config.getRecordCount()))));
+        config.setValueSize(intProperty(properties, "valueSize", config.getValueSize()));
+        config.setMaxScanLength(intProperty(properties, "maxScanLength", config.getMaxScanLength()));
+        config.setThreads(intProperty(properties, "threads", config.getThreads()));
+        config.setTargetRate(intProperty(properties, "targetRate", config.getTargetRate()));
+        config.setWarmupSeconds(intProperty(properties, "warmupSeconds", config.getWarmupSeconds()));
+        config.setDurationSeconds(intProperty(properties, "durationSeconds", config.getDurationSeconds()));
+        config.setLoad(Boolean.parseBoolean(properties.getProperty("load", String.valueOf(config.isLoad()))));
+        config.setOutput(properties.getProperty("output"));
+        return config;
+    }
+
+    private static int intProperty(Properties properties, String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static double doubleProperty(Properties properties, String name, double defaultValue) {
+        String value = properties.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    @Override
+    public String toString() {
+        return "LoadConfig{" +
+                "host=" + host +
+                ", port=" + port +
+                ", embedded=" + embedded +
+                ", serverMode=" + serverMode +
+                ", workload=" + workload +
+                ", read=" + readProportion +
+                ", update=" + updateProportion +
+                ", insert=" + insertProportion +
+                ", scan=" + scanProportion +
+                ", readModifyWrite=" + readModifyWriteProportion +
+                ", distribution=" + distribution +
+                ", recordCount=" + recordCount +
+                ", valueSize=" + valueSize +
+                ", maxScanLength=" + maxScanLength +
+                ", threads=" + threads +
+                ", targetRate=" + targetRate +
+                ", warmupSeconds=" + warmupSeconds +
+                ", durationSeconds=" + durationSeconds +
+                ", load=" + load +
+                '}';
+    }
+}
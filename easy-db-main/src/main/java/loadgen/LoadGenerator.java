@@ -0,0 +1,465 @@
+/*
+ *@Type LoadGenerator.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 17:30
+ * @version
+ */
+package loadgen;
+
+import client.SocketClient;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import controller.Controller;
+import controller.NioServerController;
+import controller.ServerConfig;
+import controller.ServerModeEnum;
+import controller.SocketServerController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import service.NormalStore;
+import service.ShardedStore;
+import service.Store;
+import service.StoreConfig;
+import utils.LatencyHistogram;
+import utils.LoggerUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * YCSB式的端到端压测：通过SocketClient压SocketServerController（或NIO服务端），
+ * 先装载recordCount条记录，再按负载比例混合读、更新、插入、scan和读-改-写，
+ * 预热后统计吞吐和各操作的延迟分位数。
+ * <p>
+ * 开环模式（targetRate大于0）下每个线程按固定间隔排好发送时间，
+ * 响应时间从计划发送时间算到收到回复，服务端卡顿期间本该发出的请求照样计入，
+ * 不会因为客户端跟着变慢而漏掉（协调遗漏）；同时单独记录从实际发送算起的服务时间作对照。
+ * <pre>
+ * java -cp ... loadgen.LoadGenerator workload=B threads=16 targetRate=20000 durationSeconds=60
+ * </pre>
+ */
+public class LoadGenerator {
+    private final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+    private final String logFormat = "[LoadGenerator][{}]: {}";
+
+    private static final int LOAD_BATCH = 500;
+
+    /**
+     * 生成value时从一段随机字符里截取，不用每次逐个字符生成
+     */
+    private static final int VALUE_POOL = 4096;
+
+    enum Operation {
+        READ, UPDATE, INSERT, SCAN, READ_MODIFY_WRITE
+    }
+
+    private final LoadConfig config;
+
+    private final KeyGenerator keys;
+
+    private final double[] cumulative = new double[Operation.values().length];
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder notFound = new LongAdder();
+
+    public LoadGenerator(LoadConfig config) {
+        this.config = config;
+        this.keys = new KeyGenerator(config.getDistribution(), config.getRecordCount());
+        double[] proportions = {config.getReadProportion(), config.getUpdateProportion(),
+                config.getInsertProportion(), config.getScanProportion(), config.getReadModifyWriteProportion()};
+        double total = 0;
+        for (double p : proportions) {
+            total += p;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("all operation proportions are zero");
+        }
+        double sum = 0;
+        for (int i = 0; i < proportions.length; i++) {
+            sum += proportions[i] / total;
+            cumulative[i] = sum;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = LoadConfig.fromArgs(args);
+        Map<String, Object> report = new LoadGenerator(config).run();
+        print(report, System.out);
+        if (config.getOutput() != null) {
+            Files.write(Paths.get(config.getOutput()), JSON.toJSONString(report, SerializerFeature.PrettyFormat)
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        // 内置服务端的后台线程不一定都是守护线程
+        System.exit(0);
+    }
+
+    /**
+     * 按配置起服务端（如果是内置的）、装载、压测，返回报告
+     */
+    public Map<String, Object> run() throws Exception {
+        Store store = null;
+        Controller controller = null;
+        File dataDir = null;
+        String host = config.getHost();
+        int port = config.getPort();
+        if (config.isEmbedded()) {
+            host = "localhost";
+            port = freePort();
+            dataDir = Files.createTempDirectory("easy-db-load").toFile();
+            StoreConfig storeConfig = StoreConfig.load("store.properties");
+            storeConfig.setDataDir(dataDir.getPath());
+            storeConfig.setDataDirs(new ArrayList<>());
+            List<String> dirs = storeConfig.shardDirs();
+            store = dirs.size() > 1
+                    ? new ShardedStore(dirs, storeConfig)
+                    : new NormalStore(dirs.get(0) + File.separator, storeConfig);
+            ServerConfig serverConfig = ServerConfig.load("server.properties");
+            serverConfig.setMode(config.getServerMode());
+            controller = config.getServerMode() == ServerModeEnum.NIO
+                    ? new NioServerController(host, port, store, serverConfig)
+                    : new SocketServerController(host, port, store, serverConfig);
+            Controller server = controller;
+            Thread thread = new Thread(server::startServer, "easy-db-load-server");
+            thread.setDaemon(true);
+            thread.start();
+            waitForPort(host, port);
+        }
+        LoggerUtil.info(LOGGER, logFormat, "run", config.toString());
+        SocketClient client = new SocketClient(host, port, config.getThreads());
+        try {
+            if (config.isLoad()) {
+                load(client);
+            }
+            return measure(client);
+        } finally {
+            client.close();
+            if (controller != null) {
+                controller.stopServer();
+            }
+            if (store != null) {
+                store.close();
+            }
+            if (dataDir != null) {
+                delete(dataDir);
+            }
+        }
+    }
+
+    /**
+     * 装载阶段：各线程分段批量写入初始记录
+     */
+    private void load(SocketClient client) throws InterruptedException {
+        long start = System.nanoTime();
+        int threads = config.getThreads();
+        long records = config.getRecordCount();
+        List<Thread> loaders = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            long from = records * t / threads;
+            long to = records * (t + 1) / threads;
+            Thread thread = new Thread(() -> {
+                char[] pool = valuePool(ThreadLocalRandom.current());
+                Map<String, String> batch = new LinkedHashMap<>();
+                for (long i = from; i < to; i++) {
+                    batch.put(KeyGenerator.keyOf(i), nextValue(pool, ThreadLocalRandom.current()));
+                    if (batch.size() == LOAD_BATCH || i == to - 1) {
+                        client.mset(batch);
+                        batch.clear();
+                    }
+                }
+            }, "easy-db-load-" + t);
+            loaders.add(thread);
+            thread.start();
+        }
+        for (Thread thread : loaders) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        LoggerUtil.info(LOGGER, logFormat, "load",
+                String.format("loaded %d records in %.1fs (%.0f records/s)", records, seconds, records / seconds));
+    }
+
+    /**
+     * 压测阶段：预热期间的请求照发但不计入统计
+     */
+    private Map<String, Object> measure(SocketClient client) throws InterruptedException {
+        int threads = config.getThreads();
+        long start = System.nanoTime();
+        long measureStart = start + config.getWarmupSeconds() * 1_000_000_000L;
+        long end = measureStart + config.getDurationSeconds() * 1_000_000_000L;
+        long interval = config.getTargetRate() > 0 ? (long) (threads * 1e9 / config.getTargetRate()) : 0;
+        List<Worker> workers = new ArrayList<>(threads);
+        List<Thread> running = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            // 开环时各线程的发送时间错开，合起来是均匀的目标速率
+            Worker worker = new Worker(client, start + interval * t / threads, interval, measureStart, end);
+            Thread thread = new Thread(worker, "easy-db-load-worker-" + t);
+            workers.add(worker);
+            running.add(thread);
+            thread.start();
+        }
+        long last = 0;
+        for (long tick = start + 1_000_000_000L; tick < end; tick += 1_000_000_000L) {
+            LockSupport.parkNanos(tick - System.nanoTime());
+            long done = completed.sum();
+            LoggerUtil.info(LOGGER, logFormat, "measure", String.format("%ds %s ops/s, errors %d",
+                    (tick - start) / 1_000_000_000L, done - last, errors.sum()));
+            last = done;
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+        // 开环时服务端跟不上，积压的请求会在结束时间之后才发完，吞吐按实际用时算
+        return report(workers, (System.nanoTime() - measureStart) / 1e9);
+    }
+
+    private Map<String, Object> report(List<Worker> workers, double elapsedSeconds) {
+        Operation[] ops = Operation.values();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("workload", config.getWorkload().name());
+        report.put("distribution", config.getDistribution().name());
+        report.put("threads", config.getThreads());
+        report.put("targetRate", config.getTargetRate());
+        report.put("durationSeconds", config.getDurationSeconds());
+        long total = 0;
+        Map<String, Object> response = new LinkedHashMap<>();
+        Map<String, Object> service = new LinkedHashMap<>();
+        LatencyHistogram allResponse = new LatencyHistogram();
+        LatencyHistogram allService = new LatencyHistogram();
+        for (Operation op : ops) {
+            LatencyHistogram r = new LatencyHistogram();
+            LatencyHistogram s = new LatencyHistogram();
+            for (Worker worker : workers) {
+                r.add(worker.response[op.ordinal()]);
+                s.add(worker.service[op.ordinal()]);
+            }
+            if (r.getTotalCount() == 0) {
+                continue;
+            }
+            total += r.getTotalCount();
+            allResponse.add(r);
+            allService.add(s);
+            response.put(op.name(), summary(r));
+            service.put(op.name(), summary(s));
+        }
+        response.put("ALL", summary(allResponse));
+        service.put("ALL", summary(allService));
+        report.put("operations", total);
+        report.put("elapsedSeconds", elapsedSeconds);
+        report.put("throughput", total / elapsedSeconds);
+        report.put("errors", errors.sum());
+        report.put("notFound", notFound.sum());
+        report.put("responseTime", response);
+        report.put("serviceTime", service);
+        return report;
+    }
+
+    /**
+     * 延迟统一按微秒输出
+     */
+    private static Map<String, Object> summary(LatencyHistogram h) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", h.getTotalCount());
+        summary.put("mean", h.getMean() / 1000);
+        summary.put("p50", h.getValueAtPercentile(50) / 1000.0);
+        summary.put("p90", h.getValueAtPercentile(90) / 1000.0);
+        summary.put("p99", h.getValueAtPercentile(99) / 1000.0);
+        summary.put("p999", h.getValueAtPercentile(99.9) / 1000.0);
+        summary.put("p9999", h.getValueAtPercentile(99.99) / 1000.0);
+        summary.put("max", h.getMax() / 1000.0);
+        return summary;
+    }
+
+    @SuppressWarnings("unchecked")
+    static void print(Map<String, Object> report, PrintStream out) {
+        out.printf("workload %s (%s), %s threads, target %s ops/s, %ss%n", report.get("workload"),
+                report.get("distribution"), report.get("threads"),
+                (int) report.get("targetRate") > 0 ? report.get("targetRate") : "unlimited",
+                report.get("durationSeconds"));
+        out.printf("throughput %.1f ops/s, %s ops in %.1fs, %s errors, %s not found%n",
+                (double) report.get("throughput"), report.get("operations"), (double) report.get("elapsedSeconds"),
+                report.get("errors"), report.get("notFound"));
+        boolean openLoop = (int) report.get("targetRate") > 0;
+        printTable(openLoop ? "response time (us, from intended start)" : "latency (us)",
+                (Map<String, Object>) report.get("responseTime"), out);
+        if (openLoop) {
+            printTable("service time (us, from actual send)", (Map<String, Object>) report.get("serviceTime"), out);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printTable(String title, Map<String, Object> table, PrintStream out) {
+        out.println(title);
+        out.printf("  %-18s %10s %10s %10s %10s %10s %10s %10s %10s%n",
+                "op", "count", "mean", "p50", "p90", "p99", "p99.9", "p99.99", "max");
+        for (Map.Entry<String, Object> entry : table.entrySet()) {
+            Map<String, Object> s = (Map<String, Object>) entry.getValue();
+            out.printf("  %-18s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", entry.getKey(),
+                    (long) s.get("count"), (double) s.get("mean"), (double) s.get("p50"), (double) s.get("p90"),
+                    (double) s.get("p99"), (double) s.get("p999"), (double) s.get("p9999"), (double) s.get("max"));
+        }
+    }
+
+    private Operation nextOperation(Random random) {
+        double u = random.nextDouble();
+        Operation[] ops = Operation.values();
+        for (int i = 0; i < ops.length; i++) {
+            if (u < cumulative[i]) {
+                return ops[i];
+            }
+        }
+        return ops[ops.length - 1];
+    }
+
+    private char[] valuePool(Random random) {
+        char[] pool = new char[VALUE_POOL + config.getValueSize()];
+        String chars = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = chars.charAt(random.nextInt(chars.length()));
+        }
+        return pool;
+    }
+
+    private String nextValue(char[] pool, Random random) {
+        return new String(pool, random.nextInt(VALUE_POOL), config.getValueSize());
+    }
+
+    /**
+     * 单个压测线程，每种操作各有一份响应时间和服务时间的直方图，结束后汇总，记录时不用加锁
+     */
+    private class Worker implements Runnable {
+        private final SocketClient client;
+        private final long interval;
+        private final long measureStart;
+        private final long end;
+        private long next;
+        final LatencyHistogram[] response = new LatencyHistogram[Operation.values().length];
+        final LatencyHistogram[] service = new LatencyHistogram[Operation.values().length];
+
+        Worker(SocketClient client, long first, long interval, long measureStart, long end) {
+            this.client = client;
+            this.next = first;
+            this.interval = interval;
+            this.measureStart = measureStart;
+            this.end = end;
+            for (int i = 0; i < response.length; i++) {
+                response[i] = new LatencyHistogram();
+                service[i] = new LatencyHistogram();
+            }
+        }
+
+        @Override
+        public void run() {
+            Random random = ThreadLocalRandom.current();
+            char[] pool = valuePool(random);
+            while (true) {
+                long intended;
+                if (interval > 0) {
+                    intended = next;
+                    next += interval;
+                    if (intended >= end) {
+                        return;
+                    }
+                    // 落后于计划时不等待，直接补发，延迟照样从计划时间算
+                    long wait = intended - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                } else {
+                    intended = System.nanoTime();
+                    if (intended >= end) {
+                        return;
+                    }
+                }
+                Operation op = nextOperation(random);
+                long sent = System.nanoTime();
+                try {
+                    execute(op, random, pool);
+                } catch (RuntimeException e) {
+                    errors.increment();
+                    LoggerUtil.debug(LOGGER, logFormat, "worker", e.getMessage());
+                    continue;
+                }
+                long done = System.nanoTime();
+                completed.increment();
+                if (intended >= measureStart) {
+                    response[op.ordinal()].record(done - intended);
+                    service[op.ordinal()].record(done - sent);
+                }
+            }
+        }
+
+        private void execute(Operation op, Random random, char[] pool) {
+            switch (op) {
+                case READ:
+                    if (client.get(KeyGenerator.keyOf(keys.next(random))) == null) {
+                        notFound.increment();
+                    }
+                    break;
+                case UPDATE:
+                    client.set(KeyGenerator.keyOf(keys.next(random)), nextValue(pool, random));
+                    break;
+                case INSERT:
+                    client.set(KeyGenerator.keyOf(keys.nextInsert()), nextValue(pool, random));
+                    break;
+                case SCAN:
+                    client.scan(KeyGenerator.keyOf(keys.next(random)), null, 1 + random.nextInt(config.getMaxScanLength()));
+                    break;
+                default:
+                    String key = KeyGenerator.keyOf(keys.next(random));
+                    if (client.get(key) == null) {
+                        notFound.increment();
+                    }
+                    client.set(key, nextValue(pool, random));
+                    break;
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void waitForPort(String host, int port) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), 200);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("server did not start on port " + port);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
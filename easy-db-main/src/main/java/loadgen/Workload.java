@@ -0,0 +1,79 @@
+/*
+ *@Type Workload.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 16:40
+ * @version
+ */
+package loadgen;
+
+/**
+ * YCSB的A-F核心负载：各操作的比例和请求key的分布
+ */
+public enum Workload {
+    /*
+     * 更新密集：50%读 50%更新
+     * */
+    A(0.5, 0.5, 0, 0, 0, KeyDistributionEnum.ZIPFIAN),
+    /*
+     * 读为主：95%读 5%更新
+     * */
+    B(0.95, 0.05, 0, 0, 0, KeyDistributionEnum.ZIPFIAN),
+    /*
+     * 只读
+     * */
+    C(1.0, 0, 0, 0, 0, KeyDistributionEnum.ZIPFIAN),
+    /*
+     * 读最新：95%读 5%插入，越新插入的key越热
+     * */
+    D(0.95, 0, 0.05, 0, 0, KeyDistributionEnum.LATEST),
+    /*
+     * 短范围查询：95%scan 5%插入
+     * */
+    E(0, 0, 0.05, 0.95, 0, KeyDistributionEnum.ZIPFIAN),
+    /*
+     * 读-改-写：50%读 50%先读再写回
+     * */
+    F(0.5, 0, 0, 0, 0.5, KeyDistributionEnum.ZIPFIAN);
+
+    private final double readProportion;
+    private final double updateProportion;
+    private final double insertProportion;
+    private final double scanProportion;
+    private final double readModifyWriteProportion;
+    private final KeyDistributionEnum distribution;
+
+    Workload(double read, double update, double insert, double scan, double readModifyWrite,
+             KeyDistributionEnum distribution) {
+        this.readProportion = read;
+        this.updateProportion = update;
+        this.insertProportion = insert;
+        this.scanProportion = scan;
+        this.readModifyWriteProportion = readModifyWrite;
+        this.distribution = distribution;
+    }
+
+    public double getReadProportion() {
+        return readProportion;
+    }
+
+    public double getUpdateProportion() {
+        return updateProportion;
+    }
+
+    public double getInsertProportion() {
+        return insertProportion;
+    }
+
+    public double getScanProportion() {
+        return scanProportion;
+    }
+
+    public double getReadModifyWriteProportion() {
+        return readModifyWriteProportion;
+    }
+
+    public KeyDistributionEnum getDistribution() {
+        return distribution;
+    }
+}
@@ -19,8 +19,14 @@ public abstract class AbstractCommand implements Command {
     * */
     private CommandTypeEnum type;
 
+    /*
+    * 命令产生的时间（毫秒）
+    * */
+    private long timestamp;
+
     public AbstractCommand(CommandTypeEnum type) {
         this.type = type;
+        this.timestamp = System.currentTimeMillis();
     }
 
     @Override
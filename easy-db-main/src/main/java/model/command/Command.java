@@ -9,4 +9,6 @@ package model.command;
 
 public interface Command {
     String getKey();
+
+    long getTimestamp();
 }
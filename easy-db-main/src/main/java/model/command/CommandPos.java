@@ -13,18 +13,44 @@ import lombok.Setter;
 @Setter
 @Getter
 public class CommandPos {
-    private int pos;
+    /**
+     * 记录所在的SSTable编号
+     */
+    private int tableId;
+    /**
+     * 记录在表内的偏移量，64位，单个表文件不受2GB限制
+     */
+    private long pos;
     private int len;
 
-    public CommandPos(int pos, int len) {
+    public CommandPos(int tableId, long pos, int len) {
+        this.tableId = tableId;
         this.pos = pos;
         this.len = len;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CommandPos)) {
+            return false;
+        }
+        CommandPos that = (CommandPos) o;
+        return tableId == that.tableId && pos == that.pos && len == that.len;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * tableId + Long.hashCode(pos)) + len;
+    }
+
     @Override
     public String toString() {
         return "CommandPos{" +
-                "pos=" + pos +
+                "tableId=" + tableId +
+                ", pos=" + pos +
                 ", len=" + len +
                 '}';
     }
@@ -17,9 +17,26 @@ public class SetCommand extends AbstractCommand {
 
     private String value;
 
+    /*
+    * 过期时间（毫秒时间戳），0表示不过期
+    * */
+    private long expireAt;
+
     public SetCommand(String key, String value) {
         super(CommandTypeEnum.SET);
         this.key = key;
         this.value = value;
     }
+
+    public SetCommand(String key, String value, long expireAt) {
+        this(key, value);
+        this.expireAt = expireAt;
+    }
+
+    /*
+    * 到now时是否已过期
+    * */
+    public boolean expiredAt(long now) {
+        return expireAt != 0 && expireAt <= now;
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ *@Type ExpiryQueue.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/29 10:10
+ * @version
+ */
+package service;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 索引中带过期时间的key，按过期时间排序，后台清理每次只取已到期的一小段。
+ * 每个key只保留最新的过期时间；key被覆盖或删除后留下的旧条目不影响正确性，
+ * 清理时会以磁盘上的当前记录为准
+ */
+public class ExpiryQueue {
+
+    /**
+     * key到它在队列中的过期时间
+     */
+    private final ConcurrentHashMap<String, Long> deadlines = new ConcurrentHashMap<>();
+
+    private final ConcurrentSkipListSet<Entry> queue = new ConcurrentSkipListSet<>();
+
+    /**
+     * 比所有条目都小，用ceiling取第一个，队列为空时返回null而不是抛异常
+     */
+    private static final Entry LOWEST = new Entry(Long.MIN_VALUE, "");
+
+    /**
+     * 登记key的过期时间，替换之前登记的
+     */
+    public void add(String key, long expireAt) {
+        Long old = deadlines.put(key, expireAt);
+        if (old != null) {
+            if (old == expireAt) {
+                return;
+            }
+            queue.remove(new Entry(old, key));
+        }
+        queue.add(new Entry(expireAt, key));
+    }
+
+    /**
+     * key被覆盖成不过期的值或被删除
+     */
+    public void remove(String key) {
+        Long old = deadlines.remove(key);
+        if (old != null) {
+            queue.remove(new Entry(old, key));
+        }
+    }
+
+    /**
+     * 取出最多max个在now之前到期的key放进out，返回取出的个数
+     */
+    public int pollExpired(long now, int max, List<Entry> out) {
+        int polled = 0;
+        while (polled < max) {
+            Entry first = queue.ceiling(LOWEST);
+            if (first == null || first.expireAt > now || !queue.remove(first)) {
+                break;
+            }
+            // 期间被重新登记成别的过期时间时不删
+            deadlines.remove(first.key, first.expireAt);
+            out.add(first);
+            polled++;
+        }
+        return polled;
+    }
+
+    public boolean isEmpty() {
+        return deadlines.isEmpty();
+    }
+
+    public int size() {
+        return deadlines.size();
+    }
+
+    public static class Entry implements Comparable<Entry> {
+        private final long expireAt;
+        private final String key;
+
+        Entry(long expireAt, String key) {
+            this.expireAt = expireAt;
+            this.key = key;
+        }
+
+        public long getExpireAt() {
+            return expireAt;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            int cmp = Long.compare(expireAt, o.expireAt);
+            return cmp != 0 ? cmp : key.compareTo(o.key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) o;
+            return expireAt == other.expireAt && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(expireAt) + key.hashCode();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ *@Type FsyncTypeEnum.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/14 10:12
+ * @version
+ */
+package service;
+
+public enum FsyncTypeEnum {
+    /*
+     * 不主动刷盘，交给操作系统
+     * */
+    NEVER,
+    /*
+     * 每隔固定毫秒数刷盘一次
+     * */
+    INTERVAL,
+    /*
+     * 每组写入刷盘后才返回，组提交把一次fsync分摊给同一组的写入
+     * */
+    ALWAYS
+}
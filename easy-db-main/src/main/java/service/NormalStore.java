@@ -7,47 +7,155 @@
  */
 package service;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
-import controller.SocketServerHandler;
+import dto.ScanResult;
 import model.command.Command;
 import model.command.CommandPos;
 import model.command.RmCommand;
 import model.command.SetCommand;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import utils.CommandUtil;
+import service.cache.BlockCache;
+import service.cache.CacheStats;
+import service.cache.ValueCache;
+import service.compress.BlockCodec;
+import service.compress.BlockCodecs;
+import service.index.EmptyKeyIndex;
+import service.index.HashKeyIndex;
+import service.index.IndexTypeEnum;
+import service.index.KeyIndex;
+import service.index.OffHeapKeyIndex;
+import service.table.BloomFilter;
+import service.table.BloomStats;
+import service.table.CompactionStats;
+import service.table.HintFile;
+import service.table.MergingIterator;
+import service.table.SSTable;
+import service.table.SSTableWriter;
+import service.table.TableMerger;
+import service.table.TableSet;
+import service.wal.GroupCommitLog;
+import service.wal.LogStats;
+import utils.CommandCodec;
 import utils.LoggerUtil;
-import utils.RandomAccessFileUtil;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.TreeMap;
-import java.util.concurrent.locks.ReadWriteLock;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.UnaryOperator;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.jar.JarEntry;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class NormalStore implements Store {
 
     public static final String TABLE = ".table";
     public static final String RW_MODE = "rw";
     public static final String NAME = "data";
+    public static final String TMP = ".tmp";
     private final Logger LOGGER = LoggerFactory.getLogger(NormalStore.class);
     private final String logFormat = "[NormalStore][{}]: {}";
 
+    /**
+     * 冻结的日志、SSTable和提示文件名，如 data_000001.table、data_000001.sst、data_000001.hint
+     */
+    private static final Pattern FILE_PATTERN = Pattern.compile(NAME + "_(\\d+)(" + Pattern.quote(TABLE)
+            + "|" + Pattern.quote(SSTable.SUFFIX) + "|" + Pattern.quote(HintFile.SUFFIX) + ")");
+
 
     /**
-     * 内存表，类似缓存
+     * 读到的表被合并关闭时的重试次数
      */
-    private TreeMap<String, Command> memTable;
+    private static final int MAX_READ_RETRIES = 3;
 
     /**
-     * hash索引，存的是数据长度和偏移量
+     * 内存表，类似缓存，保存还没有刷到SSTable的命令。只有日志刷盘线程写，读不加锁
+     */
+    private volatile ConcurrentSkipListMap<String, Command> memTable;
+
+    /**
+     * 已冻结、正在后台刷盘的内存表，刷盘完成前也要能读到
+     */
+    private volatile ConcurrentSkipListMap<String, Command> immutableMemTable;
+
+    /**
+     * 正在写入内存表的批量记录，读时最先查，整批一次可见
+     */
+    private volatile Map<String, Command> publishing;
+
+    /**
+     * 已开始发布的批量记录数，批量查询据此判断期间是否有批量记录发布。只有日志刷盘线程写
+     */
+    private volatile long publishedBatches;
+
+    /**
+     * 保护内存表的写入和切换，范围查询在读锁下复制内存表得到一致的快照，单点读不加锁
+     */
+    private final ReentrantReadWriteLock memTableLock = new ReentrantReadWriteLock();
+
+    /**
+     * hash索引，存的是数据所在的SSTable、数据长度和偏移量，按配置选择堆上或堆外实现
      * */
-    private HashMap<String, CommandPos> index;
+    private KeyIndex index;
+
+    /**
+     * 不建索引（IndexTypeEnum.NONE），查询时按从新到旧逐个表查找
+     */
+    private final boolean probeTables;
+
+    /**
+     * 按表查找时布隆过滤器的指标
+     */
+    private final BloomStats bloomStats = new BloomStats();
+
+    /**
+     * 磁盘读出的value的缓存，写入内存表后作废对应的key；配置为0时为null
+     */
+    private final ValueCache valueCache;
+
+    /**
+     * 解压后的SSTable数据块缓存；配置为0时为null
+     */
+    private final BlockCache blockCache;
+
+    /**
+     * 新写的SSTable用的压缩算法，为null时不压缩
+     */
+    private final BlockCodec blockCodec;
+
+    /**
+     * 已刷盘的SSTable，不可变的集合，增删表时整体替换。先登记表再发布指向它的索引，先切走索引再移除表；
+     * 范围查询取到的是某一时刻完整的一组表，合并的输入是一次移除的
+     */
+    private volatile TableSet tables = TableSet.EMPTY;
+
+    /**
+     * 串行化tables的替换，刷盘线程和合并线程都会改
+     */
+    private final Object tablesLock = new Object();
 
     /**
      * 数据目录
@@ -55,144 +163,1147 @@ public class NormalStore implements Store {
     private final String dataDir;
 
     /**
-     * 读写锁，支持多线程，并发安全写入
+     * 组提交的预写日志，写盘和刷盘都由它的刷盘线程完成
+     */
+    private GroupCommitLog writeAheadLog;
+
+    /**
+     * 后台把冻结的内存表写成SSTable
+     */
+    private final ExecutorService flushExecutor;
+
+    /**
+     * 正在进行的刷盘任务
+     */
+    private Future<?> flushFuture;
+
+    /**
+     * 下一个SSTable的编号，刷盘线程和合并线程都会分配
+     */
+    private final AtomicInteger nextTableId;
+
+    /**
+     * 后台合并SSTable，回收被覆盖和删除的key占用的空间
      */
-    private final ReadWriteLock indexLock;
+    private final ExecutorService compactExecutor;
 
     /**
-     * 暂存数据的日志句柄
+     * 是否已有合并任务在排队或执行
      */
-    private RandomAccessFile writerReader;
+    private final AtomicBoolean compacting;
 
     /**
-     * 持久化阈值
+     * 合并指标
      */
-//    private final int storeThreshold;
+    private final CompactionStats compactionStats;
+
+    /**
+     * 各操作的次数、耗时和内存表锁的等待时间
+     */
+    private final StoreStats stats = new StoreStats();
+
+    /**
+     * 索引中带过期时间的key，不建索引时不用
+     */
+    private final ExpiryQueue expiryQueue = new ExpiryQueue();
+
+    /**
+     * 后台分步清理过期key；没有开启时为null
+     */
+    private final ScheduledExecutorService expireExecutor;
+
+    private volatile boolean closing;
+
+    /**
+     * 存储配置
+     */
+    private final StoreConfig config;
+
+    /**
+     * 持久化阈值，日志（即内存表）超过这个字节数就冻结并刷成SSTable
+     */
+    private final int storeThreshold;
 
     public NormalStore(String dataDir) {
+        this(dataDir, new StoreConfig());
+    }
+
+    public NormalStore(String dataDir, StoreConfig config) {
         this.dataDir = dataDir;
-        this.indexLock = new ReentrantReadWriteLock();
-        this.memTable = new TreeMap<String, Command>();
-        this.index = new HashMap<>();
+        this.config = config;
+        this.storeThreshold = config.getStoreThreshold();
+        this.memTable = new ConcurrentSkipListMap<String, Command>();
+        this.probeTables = config.getIndexType() == IndexTypeEnum.NONE;
+        if (probeTables) {
+            this.index = new EmptyKeyIndex();
+        } else if (config.getIndexType() == IndexTypeEnum.OFF_HEAP) {
+            this.index = new OffHeapKeyIndex(config.getIndexInitialCapacity());
+        } else {
+            this.index = new HashKeyIndex();
+        }
+        this.valueCache = config.getValueCacheBytes() > 0 ? new ValueCache(config.getValueCacheBytes()) : null;
+        this.blockCache = config.getBlockCacheBytes() > 0 ? new BlockCache(config.getBlockCacheBytes()) : null;
+        this.blockCodec = BlockCodecs.byName(config.getCompression());
+        this.nextTableId = new AtomicInteger(1);
+        this.flushExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "easy-db-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        this.compactExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "easy-db-compact");
+            t.setDaemon(true);
+            return t;
+        });
+        this.compacting = new AtomicBoolean(false);
+        this.compactionStats = new CompactionStats();
 
         File file = new File(dataDir);
         if (!file.exists()) {
             LoggerUtil.info(LOGGER,logFormat, "NormalStore","dataDir isn't exist,creating...");
             file.mkdirs();
         }
-        this.reloadIndex();
+        long writePos = this.reloadIndex();
+        try {
+            this.writeAheadLog = new GroupCommitLog(this.genFilePath(), writePos, config, this::onFlushed);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        // 上次关闭时积压的表
+        this.maybeCompact();
+        if (config.getExpireIntervalMs() > 0 && !probeTables) {
+            this.expireExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "easy-db-expire");
+                t.setDaemon(true);
+                return t;
+            });
+            expireExecutor.scheduleWithFixedDelay(this::expireKeys, config.getExpireIntervalMs(),
+                    config.getExpireIntervalMs(), TimeUnit.MILLISECONDS);
+        } else {
+            this.expireExecutor = null;
+        }
     }
 
     public String genFilePath() {
         return this.dataDir + File.separator + NAME + TABLE;
     }
 
+    public String genFrozenFilePath(int id) {
+        return this.dataDir + File.separator + String.format("%s_%06d%s", NAME, id, TABLE);
+    }
 
-    public void reloadIndex() {
+
+    /**
+     * 用提示文件（没有时扫描SSTable）重建索引，再把最后一次刷盘之后的日志回放进内存表，
+     * 返回当前日志最后一条完整记录的结束位置
+     */
+    public long reloadIndex() {
         try {
-            RandomAccessFile file = new RandomAccessFile(this.genFilePath(), RW_MODE);
+            List<Integer> tableIds = new ArrayList<>();
+            List<Integer> frozenIds = new ArrayList<>();
+            List<Integer> hintIds = new ArrayList<>();
+            listFiles(tableIds, frozenIds, hintIds);
+            for (int id : hintIds) {
+                if (!tableIds.contains(id)) {
+                    // 表没写完就崩溃留下的提示文件
+                    new File(HintFile.genFilePath(dataDir, NAME, id)).delete();
+                }
+            }
+            List<SSTable> opened = new ArrayList<>();
+            for (int id : tableIds) {
+                opened.add(SSTable.open(id, SSTable.genFilePath(dataDir, NAME, id), config.isMmapReads(), blockCache));
+                nextTableId.set(Math.max(nextTableId.get(), id + 1));
+            }
+            // 合并完成但旧表还没删掉就崩溃了，旧表已被新表覆盖
+            List<SSTable> live = new ArrayList<>();
+            for (SSTable table : opened) {
+                if (isCovered(opened, table.getId())) {
+                    LoggerUtil.info(LOGGER, logFormat, "reloadIndex", "delete compacted table " + table.getId());
+                    table.close();
+                    deleteTableFiles(table);
+                } else {
+                    live.add(table);
+                }
+            }
+            live.sort(Comparator.comparingInt(SSTable::getMaxId));
+            for (SSTable table : live) {
+                loadTable(table);
+            }
+            // 上次没刷完的冻结日志，重新刷一次
+            for (int id : frozenIds) {
+                nextTableId.set(Math.max(nextTableId.get(), id + 1));
+                if (tables.contains(id) || isCovered(live, id)) {
+                    new File(genFrozenFilePath(id)).delete();
+                    continue;
+                }
+                ConcurrentSkipListMap<String, Command> frozen = new ConcurrentSkipListMap<>();
+                replay(genFrozenFilePath(id), frozen);
+                flushTable(id, frozen);
+                new File(genFrozenFilePath(id)).delete();
+            }
+            long writePos = replay(this.genFilePath(), memTable);
+            if (writePos >= storeThreshold) {
+                int id = nextTableId.getAndIncrement();
+                new File(genFilePath()).renameTo(new File(genFrozenFilePath(id)));
+                flushTable(id, memTable);
+                new File(genFrozenFilePath(id)).delete();
+                memTable = new ConcurrentSkipListMap<>();
+                writePos = 0;
+            }
+            LoggerUtil.info(LOGGER, logFormat, "reloadIndex", "loaded " + index.size() + " keys from " + tables.size()
+                    + " tables, index memory " + index.memoryBytes() + " bytes");
+            return writePos;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean isCovered(List<SSTable> candidates, int id) {
+        for (SSTable table : candidates) {
+            if (table.covers(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void deleteTableFiles(SSTable table) {
+        new File(table.getFilePath()).delete();
+        new File(HintFile.genFilePath(dataDir, NAME, table.getId())).delete();
+    }
+
+    private void listFiles(List<Integer> tableIds, List<Integer> frozenIds, List<Integer> hintIds) {
+        String[] names = new File(dataDir).list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (name.endsWith(TMP)) {
+                // 没写完的合并结果
+                new File(dataDir, name).delete();
+                continue;
+            }
+            Matcher matcher = FILE_PATTERN.matcher(name);
+            if (!matcher.matches()) {
+                continue;
+            }
+            int id = Integer.parseInt(matcher.group(1));
+            if (SSTable.SUFFIX.equals(matcher.group(2))) {
+                tableIds.add(id);
+            } else if (HintFile.SUFFIX.equals(matcher.group(2))) {
+                hintIds.add(id);
+            } else {
+                frozenIds.add(id);
+            }
+        }
+        Collections.sort(tableIds);
+        Collections.sort(frozenIds);
+    }
+
+    /**
+     * 按从旧到新的顺序加载，新表的记录覆盖旧表的索引，删除标记直接移除索引。
+     * 优先读提示文件，没有或损坏时扫描整个表并补写提示文件；不建索引时只登记表
+     */
+    private void loadTable(SSTable table) throws IOException {
+        int id = table.getId();
+        if (probeTables) {
+            publishTables(current -> current.with(table));
+            return;
+        }
+        String hintPath = HintFile.genFilePath(dataDir, NAME, id);
+        long now = System.currentTimeMillis();
+        boolean hinted = HintFile.read(hintPath, (key, pos, len, tombstone, expireAt) ->
+                applyPos(key, tombstone ? null : new CommandPos(id, pos, len), expireAt, now));
+        if (!hinted) {
+            LoggerUtil.info(LOGGER, logFormat, "loadTable", "no valid hint for table " + id + ", scanning");
+            try (HintFile.Writer hintWriter = new HintFile.Writer(hintPath)) {
+                table.forEach((pos, bytes) -> {
+                    Command command = CommandCodec.decode(bytes);
+                    if (command != null) {
+                        boolean tombstone = command instanceof RmCommand;
+                        long expireAt = tombstone ? 0 : ((SetCommand) command).getExpireAt();
+                        hintWriter.add(command.getKey(), pos, bytes.length, tombstone, expireAt);
+                        applyPos(command.getKey(), tombstone ? null : new CommandPos(id, pos, bytes.length), expireAt, now);
+                    }
+                });
+                hintWriter.finish();
+            }
+        }
+        publishTables(current -> current.with(table));
+    }
+
+    /**
+     * 在tablesLock下基于当前集合生成新集合并一次发布
+     */
+    private void publishTables(UnaryOperator<TableSet> update) {
+        synchronized (tablesLock) {
+            tables = update.apply(tables);
+        }
+    }
+
+    /**
+     * 更新索引，pos为null表示key已删除
+     */
+    private void applyPos(String key, CommandPos pos) {
+        if (pos == null) {
+            index.remove(key);
+        } else {
+            index.put(key, pos);
+        }
+    }
+
+    /**
+     * 更新索引并登记过期时间，加载时已经过期的记录当作删除
+     */
+    private void applyPos(String key, CommandPos pos, long expireAt, long now) {
+        if (pos != null && expireAt != 0 && expireAt <= now) {
+            pos = null;
+        }
+        applyPos(key, pos);
+        if (pos != null && expireAt != 0) {
+            expiryQueue.add(key, expireAt);
+        } else if (!expiryQueue.isEmpty()) {
+            expiryQueue.remove(key);
+        }
+    }
+
+    /**
+     * 回放日志到target，截掉崩溃时写了一半的尾部，返回最后一条完整记录的结束位置
+     */
+    private long replay(String filePath, Map<String, Command> target) {
+        long start = 0;
+        try (RandomAccessFile file = new RandomAccessFile(filePath, RW_MODE)) {
             long len = file.length();
-            long start = 0;
             file.seek(start);
+            List<Command> commands = new ArrayList<>();
             while (start < len) {
-                int cmdLen = file.readInt();
-                byte[] bytes = new byte[cmdLen];
-                file.read(bytes);
-                JSONObject value = JSON.parseObject(new String(bytes, StandardCharsets.UTF_8));
-                Command command = CommandUtil.jsonToCommand(value);
-                start += 4;
-                if (command != null) {
-                    CommandPos cmdPos = new CommandPos((int) start, cmdLen);
-                    index.put(command.getKey(), cmdPos);
-                }
-                start += cmdLen;
-            }
-            file.seek(file.length());
+                // 崩溃时写了一半或校验失败的记录（批量记录整批）丢弃
+                int read = GroupCommitLog.readNext(file, len - start, commands);
+                if (read < 0) {
+                    break;
+                }
+                for (Command command : commands) {
+                    target.put(command.getKey(), command);
+                }
+                commands.clear();
+                start += read;
+            }
+            if (start < len) {
+                LoggerUtil.info(LOGGER, logFormat, "replay", "truncate broken tail of " + filePath + " at " + start);
+                file.setLength(start);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
-        LoggerUtil.debug(LOGGER, logFormat, "reload index: "+index.toString());
+        return start;
+    }
+
+    /**
+     * 一批日志写盘后由刷盘线程回调，按写入顺序写入内存表。
+     * 写入只在日志尾部串行，内存表是跳表，单点读不需要等，只有范围查询复制内存表时互斥。
+     * 含批量记录时先把整批作为publishing一次发布，写完内存表再撤掉
+     */
+    private void onFlushed(List<GroupCommitLog.LogEntry> batch, boolean atomic) {
+        Map<String, Command> overlay = null;
+        if (atomic) {
+            overlay = new HashMap<>(batch.size() * 2);
+            for (GroupCommitLog.LogEntry entry : batch) {
+                overlay.put(entry.getCommand().getKey(), entry.getCommand());
+            }
+        }
+        lock(memTableLock.writeLock());
+        try {
+            if (overlay != null) {
+                publishing = overlay;
+                publishedBatches++;
+            }
+            for (GroupCommitLog.LogEntry entry : batch) {
+                // 保存到memTable，之后磁盘上的旧值不能再从缓存读到
+                Command command = entry.getCommand();
+                memTable.put(command.getKey(), command);
+                if (valueCache != null) {
+                    valueCache.invalidate(command.getKey());
+                }
+            }
+            publishing = null;
+        } finally {
+            memTableLock.writeLock().unlock();
+        }
+        // 判断是否需要将内存表中的值写回table
+        if (writeAheadLog.getWritePos() >= storeThreshold) {
+            try {
+                freezeMemTable();
+            } catch (Throwable t) {
+                LoggerUtil.error(LOGGER, t, logFormat, "freezeMemTable", "freeze failed, will retry on next write");
+            }
+        }
+    }
+
+    /**
+     * 在刷盘线程内执行：冻结当前内存表，切换日志文件，提交后台刷盘任务。
+     * 上一个冻结的内存表还没刷完时在这里等待，形成写入背压
+     */
+    private void freezeMemTable() throws IOException, InterruptedException {
+        waitForFlush();
+        int id = nextTableId.getAndIncrement();
+        writeAheadLog.roll(genFrozenFilePath(id));
+        // 先发布冻结表再换新表，读线程按 memTable -> immutableMemTable 的顺序读不会漏掉
+        ConcurrentSkipListMap<String, Command> frozen = memTable;
+        lock(memTableLock.writeLock());
+        try {
+            immutableMemTable = frozen;
+            memTable = new ConcurrentSkipListMap<>();
+        } finally {
+            memTableLock.writeLock().unlock();
+        }
+        flushFuture = flushExecutor.submit(() -> {
+            try {
+                flushTable(id, frozen);
+                new File(genFrozenFilePath(id)).delete();
+                maybeCompact();
+            } catch (Throwable t) {
+                LoggerUtil.error(LOGGER, t, logFormat, "flushTable", "flush memTable to sstable " + id + " failed");
+                throw new RuntimeException(t);
+            }
+        });
+    }
+
+    private void waitForFlush() throws InterruptedException {
+        if (flushFuture == null) {
+            return;
+        }
+        try {
+            flushFuture.get();
+        } catch (ExecutionException e) {
+            // 冻结日志还在磁盘上，下次启动时会重新刷
+            LoggerUtil.error(LOGGER, e.getCause(), logFormat, "waitForFlush", "previous flush failed");
+        }
+        flushFuture = null;
+    }
+
+    /**
+     * 把有序的内存表写成SSTable，完成后再切换索引。
+     * 已过期的记录写成删除标记，既不占索引，也能盖住更旧的表里的值
+     */
+    private void flushTable(int id, ConcurrentSkipListMap<String, Command> frozen) throws IOException {
+        String path = SSTable.genFilePath(dataDir, NAME, id);
+        String hintPath = HintFile.genFilePath(dataDir, NAME, id);
+        Map<String, CommandPos> positions = new HashMap<>(frozen.size() * 2);
+        Map<String, Long> deadlines = new HashMap<>();
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        try (SSTableWriter writer = new SSTableWriter(path, hintPath, config.getBlockSize(), id, id,
+                config.getBloomFalsePositiveRate(), blockCodec)) {
+            for (Map.Entry<String, Command> entry : frozen.entrySet()) {
+                Command command = entry.getValue();
+                if (command instanceof SetCommand && ((SetCommand) command).expiredAt(now)) {
+                    RmCommand tombstone = new RmCommand(command.getKey());
+                    tombstone.setTimestamp(command.getTimestamp());
+                    command = tombstone;
+                    expired++;
+                }
+                byte[] bytes = CommandCodec.encode(command);
+                boolean tombstone = command instanceof RmCommand;
+                long pos = writer.append(entry.getKey(), bytes, tombstone);
+                if (!probeTables) {
+                    positions.put(entry.getKey(), tombstone ? null : new CommandPos(id, pos, bytes.length));
+                    if (!tombstone && ((SetCommand) command).getExpireAt() != 0) {
+                        deadlines.put(entry.getKey(), ((SetCommand) command).getExpireAt());
+                    }
+                }
+            }
+            writer.finish();
+        }
+        SSTable table = SSTable.open(id, path, config.isMmapReads(), blockCache);
+        publishTables(current -> current.with(table));
+        for (Map.Entry<String, CommandPos> entry : positions.entrySet()) {
+            Long expireAt = deadlines.get(entry.getKey());
+            applyPos(entry.getKey(), entry.getValue(), expireAt == null ? 0 : expireAt, now);
+        }
+        stats.expired(expired);
+        // 索引都发布后才撤掉冻结表
+        if (immutableMemTable == frozen) {
+            immutableMemTable = null;
+        }
+        LoggerUtil.info(LOGGER, logFormat, "flushTable", table.toString());
+    }
+
+    /**
+     * SSTable数量达到阈值时提交一次后台合并
+     */
+    private void maybeCompact() {
+        if (tables.size() < config.getCompactionTrigger() || closing || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+        compactExecutor.submit(() -> {
+            try {
+                compact();
+            } catch (Throwable t) {
+                if (closing) {
+                    LoggerUtil.info(LOGGER, logFormat, "compact", "compaction aborted by close");
+                } else {
+                    LoggerUtil.error(LOGGER, t, logFormat, "compact", "compaction failed");
+                }
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    /**
+     * 把当前所有SSTable归并成一个，只保留每个key最新的有效记录。
+     * 索引逐条用replace切换到新位置；切换期间新旧表都可读，旧表在索引全部切走后才移除。
+     * <p>
+     * 有意每次都全量合并，不按大小分层挑选输入：只有输入包含所有更旧的表时，
+     * 删除标记和过期记录才能直接丢弃，否则得一直保留到最底层。代价是每次合并都重写全部数据，
+     * 写放大随数据量增长，合并频率由compactionTrigger控制
+     */
+    public void compact() throws IOException {
+        List<SSTable> inputs = new ArrayList<>(tables.all());
+        if (inputs.size() < 2) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        inputs.sort(Comparator.comparingInt(SSTable::getMaxId));
+        Set<Integer> inputIds = new HashSet<>();
+        long inputBytes = 0;
+        for (SSTable table : inputs) {
+            inputIds.add(table.getId());
+            inputBytes += table.getFileSize();
+        }
+        int outId = nextTableId.getAndIncrement();
+        TableMerger merger = new TableMerger(inputs, config.getBlockSize(), config.getBloomFalsePositiveRate(),
+                blockCodec, () -> closing);
+        String outPath = SSTable.genFilePath(dataDir, NAME, outId);
+        SSTable output = null;
+        if (merger.merge(outId, outPath, HintFile.genFilePath(dataDir, NAME, outId))) {
+            SSTable merged = SSTable.open(outId, outPath, config.isMmapReads(), blockCache);
+            publishTables(current -> current.with(merged));
+            output = merged;
+        }
+        // 只替换仍指向旧表的索引，期间刷盘产生的更新的位置由replace的比较挡住
+        List<String> keys = merger.getKeys();
+        List<CommandPos> positions = merger.getPositions();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            CommandPos current = index.get(key);
+            if (current == null || !inputIds.contains(current.getTableId())) {
+                continue;
+            }
+            index.replace(key, current, positions.get(i));
+        }
+        // 输入一次全部移除，读线程不会看到只剩一部分输入的集合
+        publishTables(current -> current.without(inputs));
+        // 还拿着旧表的读线程：映射区在关闭后仍有效，positional read会失败并重试
+        for (SSTable table : inputs) {
+            table.close();
+            deleteTableFiles(table);
+        }
+        long outputBytes = output == null ? 0 : output.getFileSize();
+        long cost = System.currentTimeMillis() - start;
+        compactionStats.record(inputBytes - outputBytes, merger.getExpired(), cost);
+        LoggerUtil.info(LOGGER, logFormat, "compact", "merged " + inputIds + " into " + output
+                + ", reclaimed " + (inputBytes - outputBytes) + " bytes, dropped " + merger.getExpired()
+                + " expired records in " + cost + " ms");
+    }
+
+    /**
+     * 后台清理一轮：按过期时间从早到晚取已到期的key，索引仍指向过期记录时移除。
+     * 每步最多expireBatchSize个，一轮超过间隔的四分之一就留到下一轮，不会长时间占着磁盘和CPU
+     */
+    private void expireKeys() {
+        long start = System.currentTimeMillis();
+        long budget = Math.max(1, config.getExpireIntervalMs() / 4);
+        List<ExpiryQueue.Entry> batch = new ArrayList<>(config.getExpireBatchSize());
+        try {
+            while (!closing) {
+                long now = System.currentTimeMillis();
+                batch.clear();
+                if (expiryQueue.pollExpired(now, config.getExpireBatchSize(), batch) == 0) {
+                    return;
+                }
+                int expired = 0;
+                for (ExpiryQueue.Entry entry : batch) {
+                    if (expireKey(entry.getKey(), now)) {
+                        expired++;
+                    }
+                }
+                stats.expired(expired);
+                if (System.currentTimeMillis() - start >= budget) {
+                    return;
+                }
+            }
+        } catch (Throwable t) {
+            // 没处理完的key读到时仍然是过期的，合并时也会丢弃
+            LoggerUtil.error(LOGGER, t, logFormat, "expireKeys", "expire round failed");
+        }
+    }
+
+    /**
+     * 索引指向的记录已过期时移除索引。key期间被刷盘覆盖时记录不再过期，不动；
+     * 被合并换了位置时replace失败，按新位置重查
+     */
+    private boolean expireKey(String key, long now) throws IOException {
+        for (int attempt = 0; attempt <= MAX_READ_RETRIES; attempt++) {
+            CommandPos pos = index.get(key);
+            if (pos == null) {
+                return false;
+            }
+            ByteBuffer record = readRecord(pos);
+            if (record == null) {
+                continue;
+            }
+            long expireAt = CommandCodec.expireAt(record);
+            if (expireAt == 0 || expireAt > now) {
+                return false;
+            }
+            if (index.replace(key, pos, null)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 加锁并记录等待时间
+     */
+    private void lock(Lock lock) {
+        long start = System.nanoTime();
+        lock.lock();
+        stats.getMemTableLockWait().recordSince(start);
+    }
+
+    public StoreStats getStats() {
+        return stats;
+    }
+
+    public LogStats getLogStats() {
+        return writeAheadLog.getStats();
+    }
+
+    /**
+     * 汇总所有指标，名字都以store.开头，STATS命令和JMX共用
+     */
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        stats.putMetrics("store.", out);
+        writeAheadLog.getStats().putMetrics("store.wal.", out);
+        out.put("store.memTableSize", memTable.size());
+        out.put("store.indexSize", getIndexSize());
+        out.put("store.indexMemoryBytes", getIndexMemoryBytes());
+        out.put("store.expiringKeys", expiryQueue.size());
+        out.put("store.tables", tables.size());
+        out.put("store.compressionRatio", Math.round(getCompressionRatio() * 100) / 100.0);
+        if (valueCache != null) {
+            valueCache.getStats().putMetrics("store.valueCache.", out);
+        }
+        if (blockCache != null) {
+            blockCache.getStats().putMetrics("store.blockCache.", out);
+        }
+        if (probeTables) {
+            bloomStats.putMetrics("store.bloom.", out);
+        }
+        compactionStats.putMetrics("store.compaction.", out);
+        return out;
+    }
+
+    public int getIndexSize() {
+        return index.size();
+    }
+
+    /**
+     * 索引占用的内存，用来对比堆上和堆外实现
+     */
+    public long getIndexMemoryBytes() {
+        return index.memoryBytes();
+    }
+
+    public CompactionStats getCompactionStats() {
+        return compactionStats;
+    }
+
+    /**
+     * 布隆过滤器的指标，只在不建索引时有计数
+     */
+    public BloomStats getBloomStats() {
+        return bloomStats;
+    }
+
+    /**
+     * 数据块缓存的指标，没有开启缓存时返回null
+     */
+    public CacheStats getBlockCacheStats() {
+        return blockCache == null ? null : blockCache.getStats();
+    }
+
+    /**
+     * 所有SSTable数据区压缩前后的字节数之比，没有表时返回1
+     */
+    public double getCompressionRatio() {
+        long raw = 0;
+        long stored = 0;
+        for (SSTable table : tables.all()) {
+            raw += table.getRawDataSize();
+            stored += table.getDataSize();
+        }
+        return stored == 0 ? 1 : (double) raw / stored;
+    }
+
+    /**
+     * value缓存的指标，没有开启缓存时返回null
+     */
+    public CacheStats getCacheStats() {
+        return valueCache == null ? null : valueCache.getStats();
     }
 
     @Override
     public void set(String key, String value) {
+        long start = System.nanoTime();
         try {
             SetCommand command = new SetCommand(key, value);
-            byte[] commandBytes = JSONObject.toJSONBytes(command);
-            // 加锁
-            indexLock.writeLock().lock();
-            // TODO://先写内存表，内存表达到一定阀值再写进磁盘
-            // 写table（wal）文件
-            RandomAccessFileUtil.writeInt(this.genFilePath(), commandBytes.length);
-            int pos = RandomAccessFileUtil.write(this.genFilePath(), commandBytes);
-            // 保存到memTable
-            // 添加索引
-            CommandPos cmdPos = new CommandPos(pos, commandBytes.length);
-            index.put(key, cmdPos);
-            // TODO://判断是否需要将内存表中的值写回table
+            byte[] commandBytes = CommandCodec.encode(command);
+            // 写table（wal）文件，和其他线程的写入合并落盘，落盘后写入内存表再返回
+            writeAheadLog.append(command, commandBytes);
         } catch (Throwable t) {
+            stats.error();
             throw new RuntimeException(t);
         } finally {
-            indexLock.writeLock().unlock();
+            stats.getSet().recordSince(start);
         }
     }
 
+    @Override
+    public void set(String key, String value, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        long start = System.nanoTime();
+        try {
+            SetCommand command = new SetCommand(key, value);
+            command.setExpireAt(command.getTimestamp() + ttlMillis);
+            writeAheadLog.append(command, CommandCodec.encode(command));
+        } catch (Throwable t) {
+            stats.error();
+            throw new RuntimeException(t);
+        } finally {
+            stats.getSet().recordSince(start);
+        }
+    }
+
+    /**
+     * 不加锁读：内存表和索引都是并发结构，磁盘读取期间不阻塞任何写入。
+     * 读到的表恰好被合并移除或关闭时，索引已经指向新表，重新查一次即可
+     */
     @Override
     public String get(String key) {
+        long start = System.nanoTime();
         try {
-            indexLock.readLock().lock();
+            return doGet(key);
+        } catch (Throwable t) {
+            stats.error();
+            throw new RuntimeException(t);
+        } finally {
+            stats.getGet().recordSince(start);
+        }
+    }
+
+    /**
+     * 单点查找，计时和异常包装在get里
+     */
+    private String doGet(String key) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            // 缓存的版本号要在查内存表之前取
+            long stamp = valueCache == null ? 0 : valueCache.stamp(key);
+            // 先查正在发布的批量记录和内存表，再查冻结的内存表
+            Command cmd = getFromMemTables(publishing, key);
+            if (cmd != null) {
+                return valueOf(cmd);
+            }
+            if (valueCache != null) {
+                String cached = valueCache.get(key);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            if (probeTables) {
+                return probeValue(key, stamp);
+            }
             // 从索引中获取信息
             CommandPos cmdPos = index.get(key);
             if (cmdPos == null) {
                 return null;
             }
-            byte[] commandBytes = RandomAccessFileUtil.readByIndex(this.genFilePath(), cmdPos.getPos(), cmdPos.getLen());
+            ByteBuffer record = readRecord(cmdPos);
+            if (record != null) {
+                return recordValue(key, record, stamp);
+            }
+            if (attempt >= MAX_READ_RETRIES) {
+                throw new IllegalStateException("table " + cmdPos.getTableId() + " of key " + key + " is gone");
+            }
+        }
+    }
 
-            JSONObject value = JSONObject.parseObject(new String(commandBytes));
-            Command cmd = CommandUtil.jsonToCommand(value);
-            if (cmd instanceof SetCommand) {
-                return ((SetCommand) cmd).getValue();
+    /**
+     * 批量查询：内存表命中的直接返回，其余按(表, 偏移量)排序后读，同一个表内顺序访问。
+     * 查内存表期间有批量记录开始发布就重查，不会只看到半批
+     */
+    @Override
+    public List<String> mget(List<String> keys) {
+        long start = System.nanoTime();
+        try {
+            String[] values = new String[keys.size()];
+            List<Integer> onDisk = new ArrayList<>();
+            CommandPos[] positions = new CommandPos[keys.size()];
+            long[] stamps = new long[keys.size()];
+            long seen;
+            do {
+                seen = publishedBatches;
+                Map<String, Command> overlay = publishing;
+                onDisk.clear();
+                for (int i = 0; i < keys.size(); i++) {
+                    values[i] = null;
+                    stamps[i] = valueCache == null ? 0 : valueCache.stamp(keys.get(i));
+                    Command cmd = getFromMemTables(overlay, keys.get(i));
+                    if (cmd != null) {
+                        values[i] = valueOf(cmd);
+                        continue;
+                    }
+                    if (valueCache != null && (values[i] = valueCache.get(keys.get(i))) != null) {
+                        continue;
+                    }
+                    if (probeTables || (positions[i] = index.get(keys.get(i))) != null) {
+                        onDisk.add(i);
+                    }
+                }
+            } while (seen != publishedBatches);
+            if (probeTables) {
+                for (int i : onDisk) {
+                    values[i] = probeValue(keys.get(i), stamps[i]);
+                }
+                return Arrays.asList(values);
             }
-            if (cmd instanceof RmCommand) {
-                return null;
+            onDisk.sort(Comparator.<Integer>comparingInt(i -> positions[i].getTableId())
+                    .thenComparingLong(i -> positions[i].getPos()));
+            for (int i : onDisk) {
+                ByteBuffer record = readRecord(positions[i]);
+                // 表刚被合并掉，走单个查询的重试逻辑
+                values[i] = record != null ? recordValue(keys.get(i), record, stamps[i]) : get(keys.get(i));
             }
+            return Arrays.asList(values);
+        } catch (Throwable t) {
+            stats.error();
+            throw new RuntimeException(t);
+        } finally {
+            stats.getMget().recordSince(start);
+        }
+    }
 
+    /**
+     * 范围查询一页：先取表集合，再在读锁下复制两个内存表的范围，表集合期间没变就是同一时刻的快照，
+     * 之后对快照做多路归并，不再持锁。和刷盘、合并撞上时重来
+     */
+    @Override
+    public ScanResult scan(String startKey, String endKey, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    ScanResult result = scanSnapshot(startKey, endKey, limit);
+                    if (result != null) {
+                        return result;
+                    }
+                } catch (ClosedChannelException e) {
+                    // 表被合并关闭，重新取快照
+                }
+                if (attempt >= MAX_READ_RETRIES) {
+                    throw new IllegalStateException("scan from " + startKey + " kept racing with flush and compaction");
+                }
+            }
         } catch (Throwable t) {
+            stats.error();
             throw new RuntimeException(t);
         } finally {
-            indexLock.readLock().unlock();
+            stats.getScan().recordSince(start);
+        }
+    }
+
+    @Override
+    public ScanResult prefix(String prefix, int limit) {
+        return scan(prefix, ScanResult.prefixEnd(prefix), limit);
+    }
+
+    private ScanResult scanSnapshot(String startKey, String endKey, int limit) throws IOException {
+        TableSet snapshot = tables;
+        List<Command> active = new ArrayList<>();
+        List<Command> frozen = new ArrayList<>();
+        String bound;
+        lock(memTableLock.readLock());
+        try {
+            bound = minKey(copyRange(memTable, startKey, endKey, limit, active),
+                    copyRange(immutableMemTable, startKey, endKey, limit, frozen));
+        } finally {
+            memTableLock.readLock().unlock();
+        }
+        // 期间有刷盘或合并换了表集合，复制的内存表和表集合可能对不上
+        if (tables != snapshot) {
+            return null;
+        }
+        // 从新到旧：内存表、冻结的内存表、按maxId从大到小的SSTable
+        List<MergingIterator.Source> sources = new ArrayList<>(snapshot.size() + 2);
+        sources.add(MergingIterator.of(active));
+        sources.add(MergingIterator.of(frozen));
+        for (SSTable table : snapshot.newestFirst()) {
+            sources.add(MergingIterator.of(table, startKey));
+        }
+        MergingIterator it = new MergingIterator(sources);
+        long now = System.currentTimeMillis();
+        List<String> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        while (it.next()) {
+            Command command = it.getCommand();
+            String key = command.getKey();
+            if (endKey != null && key.compareTo(endKey) >= 0) {
+                return new ScanResult(keys, values, null);
+            }
+            // 内存表只复制到bound，之后的key可能被没复制的更新覆盖，留给下一页
+            if (bound != null && key.compareTo(bound) > 0) {
+                return new ScanResult(keys, values, ScanResult.successor(bound));
+            }
+            if (keys.size() == limit) {
+                return new ScanResult(keys, values, key);
+            }
+            if (command instanceof SetCommand && !((SetCommand) command).expiredAt(now)) {
+                keys.add(key);
+                values.add(((SetCommand) command).getValue());
+            }
+        }
+        return new ScanResult(keys, values, bound == null ? null : ScanResult.successor(bound));
+    }
+
+    /**
+     * 把内存表[startKey, endKey)内最多limit条命令复制到out，后面还有时返回最后复制的key
+     */
+    private static String copyRange(ConcurrentSkipListMap<String, Command> table, String startKey, String endKey,
+                                    int limit, List<Command> out) {
+        if (table == null) {
+            return null;
+        }
+        Map<String, Command> range = table;
+        if (startKey != null && endKey != null) {
+            range = startKey.compareTo(endKey) < 0 ? table.subMap(startKey, endKey) : Collections.<String, Command>emptyMap();
+        } else if (startKey != null) {
+            range = table.tailMap(startKey);
+        } else if (endKey != null) {
+            range = table.headMap(endKey);
+        }
+        for (Command command : range.values()) {
+            if (out.size() == limit) {
+                return out.get(limit - 1).getKey();
+            }
+            out.add(command);
         }
         return null;
     }
 
+    private static String minKey(String a, String b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    /**
+     * 解码磁盘读出的记录，过期的当作不存在。带过期时间的value不进缓存，否则缓存的值会比记录活得久
+     */
+    private String recordValue(String key, ByteBuffer record, long stamp) {
+        String value = CommandCodec.decodeValue(record);
+        return CommandCodec.expireAt(record) == 0 ? cacheValue(key, value, stamp) : value;
+    }
+
+    /**
+     * 磁盘读出的value放进缓存，读期间key被写过就不放
+     */
+    private String cacheValue(String key, String value, long stamp) {
+        if (valueCache != null && value != null) {
+            valueCache.putIfFresh(key, value, stamp);
+        }
+        return value;
+    }
+
+    private Command getFromMemTables(Map<String, Command> overlay, String key) {
+        Command cmd = overlay == null ? null : overlay.get(key);
+        if (cmd == null) {
+            cmd = memTable.get(key);
+        }
+        if (cmd == null) {
+            Map<String, Command> frozen = immutableMemTable;
+            if (frozen != null) {
+                cmd = frozen.get(key);
+            }
+        }
+        return cmd;
+    }
+
+    /**
+     * 内存表里的命令对应的value，删除和已过期的为null
+     */
+    private static String valueOf(Command cmd) {
+        if (!(cmd instanceof SetCommand)) {
+            return null;
+        }
+        SetCommand set = (SetCommand) cmd;
+        return set.getExpireAt() != 0 && set.expiredAt(System.currentTimeMillis()) ? null : set.getValue();
+    }
+
+    /**
+     * 不建索引时从新到旧逐个表查找，布隆过滤器判定不在的表不读盘。
+     * 读到已被合并关闭的表时换新的表集合重查
+     */
+    private String probeValue(String key, long stamp) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = BloomFilter.hash(keyBytes);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                // 集合和顺序都来自同一次发布，读不到合并到一半的表
+                for (SSTable table : tables.newestFirst()) {
+                    if (!table.mightContain(hash)) {
+                        bloomStats.skip();
+                        continue;
+                    }
+                    ByteBuffer record = table.find(key, keyBytes);
+                    bloomStats.blockRead(record != null || !table.hasBloomFilter());
+                    if (record != null) {
+                        // 删除标记和过期的记录解码为null，更旧的表不用再查
+                        return recordValue(key, record, stamp);
+                    }
+                }
+                return null;
+            } catch (ClosedChannelException e) {
+                if (attempt >= MAX_READ_RETRIES) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 读出一条记录，所在的表已被合并移除或关闭时返回null，调用方重新查索引
+     */
+    private ByteBuffer readRecord(CommandPos cmdPos) throws IOException {
+        SSTable table = tables.get(cmdPos.getTableId());
+        if (table == null) {
+            return null;
+        }
+        try {
+            return table.slice(cmdPos.getPos(), cmdPos.getLen());
+        } catch (ClosedChannelException e) {
+            return null;
+        }
+    }
+
     @Override
     public void rm(String key) {
+        long start = System.nanoTime();
         try {
             RmCommand command = new RmCommand(key);
-            byte[] commandBytes = JSONObject.toJSONBytes(command);
-            // 加锁
-            indexLock.writeLock().lock();
-            // TODO://先写内存表，内存表达到一定阀值再写进磁盘
+            byte[] commandBytes = CommandCodec.encode(command);
+            // 写table（wal）文件，和其他线程的写入合并落盘，落盘后写入内存表再返回
+            writeAheadLog.append(command, commandBytes);
+        } catch (Throwable t) {
+            stats.error();
+            throw new RuntimeException(t);
+        } finally {
+            stats.getRm().recordSince(start);
+        }
+    }
 
-            // 写table（wal）文件
-            int pos = RandomAccessFileUtil.write(this.genFilePath(), commandBytes);
-            // 保存到memTable
+    @Override
+    public void write(WriteBatch batch) {
+        long start = System.nanoTime();
+        try {
+            appendAll(batch.getCommands());
+        } finally {
+            stats.getWrite().recordSince(start);
+        }
+    }
 
-            // 添加索引
-            CommandPos cmdPos = new CommandPos(pos, commandBytes.length);
-            index.put(key, cmdPos);
+    @Override
+    public void mset(Map<String, String> kvs) {
+        long start = System.nanoTime();
+        try {
+            List<Command> commands = new ArrayList<>(kvs.size());
+            for (Map.Entry<String, String> entry : kvs.entrySet()) {
+                commands.add(new SetCommand(entry.getKey(), entry.getValue()));
+            }
+            appendAll(commands);
+        } finally {
+            stats.getMset().recordSince(start);
+        }
+    }
 
-            // TODO://判断是否需要将内存表中的值写回table
+    @Override
+    public void mrm(List<String> keys) {
+        long start = System.nanoTime();
+        try {
+            List<Command> commands = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                commands.add(new RmCommand(key));
+            }
+            appendAll(commands);
+        } finally {
+            stats.getMrm().recordSince(start);
+        }
+    }
 
+    /**
+     * 整批编码后作为一条批量记录一次入队，和其他线程的写入合并落盘，只等待一次
+     */
+    private void appendAll(List<Command> commands) {
+        if (commands.isEmpty()) {
+            return;
+        }
+        try {
+            List<byte[]> bytes = new ArrayList<>(commands.size());
+            for (Command command : commands) {
+                bytes.add(CommandCodec.encode(command));
+            }
+            writeAheadLog.appendAll(commands, bytes);
         } catch (Throwable t) {
+            stats.error();
             throw new RuntimeException(t);
-        } finally {
-            indexLock.writeLock().unlock();
         }
     }
 
     @Override
     public void close() throws IOException {
-
+        if (expireExecutor != null) {
+            // 不用shutdownNow：中断会关掉正在读的FileChannel
+            expireExecutor.shutdown();
+        }
+        writeAheadLog.close();
+        flushExecutor.shutdown();
+        try {
+            waitForFlush();
+            // 正在进行的合并会尽快中止，没切换完的结果下次启动时清理
+            closing = true;
+            compactExecutor.shutdown();
+            compactExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            if (expireExecutor != null) {
+                expireExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SSTable table : tables.all()) {
+            table.close();
+        }
+        index.close();
     }
 }
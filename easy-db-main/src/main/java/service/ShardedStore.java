@@ -0,0 +1,378 @@
+/*
+ *@Type ShardedStore.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/25 09:30
+ * @version
+ */
+package service;
+
+import dto.ScanResult;
+import model.command.Command;
+import model.command.SetCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.LoggerUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 按key的hash把数据分到N个互相独立的NormalStore上，每个分片有自己的数据目录、
+ * 预写日志、刷盘线程和合并线程，不同分片的写入和fsync互不等待。
+ * <p>
+ * 单key操作只落在一个分片上。批量操作按分片拆开并行执行；
+ * write的原子性和scan的快照都只在单个分片内成立。
+ * 分片数写在每个分片目录的shard.meta里，用不同的分片数打开已有数据会直接失败
+ */
+public class ShardedStore implements Store {
+
+    public static final String META_FILE = "shard.meta";
+    private final Logger LOGGER = LoggerFactory.getLogger(ShardedStore.class);
+    private final String logFormat = "[ShardedStore][{}]: {}";
+
+    private final NormalStore[] shards;
+
+    /**
+     * 跨分片的批量操作并行下发到各分片
+     */
+    private final ExecutorService executor;
+
+    public ShardedStore(StoreConfig config) {
+        this(config.shardDirs(), config);
+    }
+
+    public ShardedStore(List<String> dataDirs, StoreConfig config) {
+        if (dataDirs.isEmpty()) {
+            throw new IllegalArgumentException("no shard data dirs");
+        }
+        this.shards = new NormalStore[dataDirs.size()];
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                checkMeta(dataDirs.get(i), i, shards.length);
+                shards[i] = new NormalStore(dataDirs.get(i), config);
+            }
+        } catch (RuntimeException e) {
+            closeOpened();
+            throw e;
+        }
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(shards.length, r -> {
+            Thread t = new Thread(r, "easy-db-shard-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        LoggerUtil.info(LOGGER, logFormat, "ShardedStore", "opened " + shards.length + " shards " + dataDirs);
+    }
+
+    /**
+     * 第一次打开时写入分片编号和分片数，之后打开时校验，防止分片数变了导致key找不到
+     */
+    private static void checkMeta(String dataDir, int shard, int count) {
+        File dir = new File(dataDir);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        File meta = new File(dir, META_FILE);
+        Properties properties = new Properties();
+        try {
+            if (meta.exists()) {
+                try (InputStream in = new FileInputStream(meta)) {
+                    properties.load(in);
+                }
+                int savedShard = Integer.parseInt(properties.getProperty("shard"));
+                int savedCount = Integer.parseInt(properties.getProperty("count"));
+                if (savedShard != shard || savedCount != count) {
+                    throw new IllegalStateException(dataDir + " is shard " + savedShard + " of " + savedCount
+                            + ", but opened as shard " + shard + " of " + count);
+                }
+                return;
+            }
+            properties.setProperty("shard", String.valueOf(shard));
+            properties.setProperty("count", String.valueOf(count));
+            try (OutputStream out = new FileOutputStream(meta)) {
+                properties.store(out, "easy-db shard");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void closeOpened() {
+        for (NormalStore shard : shards) {
+            if (shard != null) {
+                try {
+                    shard.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * String.hashCode的结果是规范定义的，重启和换JVM后不变
+     */
+    private int shardOf(String key) {
+        int h = key.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public NormalStore getShard(int i) {
+        return shards[i];
+    }
+
+    @Override
+    public void set(String key, String value) {
+        shards[shardOf(key)].set(key, value);
+    }
+
+    @Override
+    public void set(String key, String value, long ttlMillis) {
+        shards[shardOf(key)].set(key, value, ttlMillis);
+    }
+
+    @Override
+    public String get(String key) {
+        return shards[shardOf(key)].get(key);
+    }
+
+    @Override
+    public void rm(String key) {
+        shards[shardOf(key)].rm(key);
+    }
+
+    @Override
+    public List<String> mget(List<String> keys) {
+        List<List<Integer>> slots = group(keys);
+        String[] values = new String[keys.size()];
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int s = 0; s < shards.length; s++) {
+            List<Integer> slot = slots.get(s);
+            if (slot.isEmpty()) {
+                continue;
+            }
+            NormalStore shard = shards[s];
+            futures.add(submit(() -> {
+                List<String> shardKeys = new ArrayList<>(slot.size());
+                for (int i : slot) {
+                    shardKeys.add(keys.get(i));
+                }
+                List<String> shardValues = shard.mget(shardKeys);
+                for (int j = 0; j < slot.size(); j++) {
+                    values[slot.get(j)] = shardValues.get(j);
+                }
+                return null;
+            }));
+        }
+        join(futures);
+        return Arrays.asList(values);
+    }
+
+    @Override
+    public void mset(Map<String, String> kvs) {
+        List<Map<String, String>> parts = new ArrayList<>(shards.length);
+        for (int s = 0; s < shards.length; s++) {
+            parts.add(new LinkedHashMap<>());
+        }
+        for (Map.Entry<String, String> entry : kvs.entrySet()) {
+            parts.get(shardOf(entry.getKey())).put(entry.getKey(), entry.getValue());
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int s = 0; s < shards.length; s++) {
+            Map<String, String> part = parts.get(s);
+            if (!part.isEmpty()) {
+                NormalStore shard = shards[s];
+                futures.add(submit(() -> {
+                    shard.mset(part);
+                    return null;
+                }));
+            }
+        }
+        join(futures);
+    }
+
+    @Override
+    public void mrm(List<String> keys) {
+        List<List<Integer>> slots = group(keys);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int s = 0; s < shards.length; s++) {
+            List<Integer> slot = slots.get(s);
+            if (slot.isEmpty()) {
+                continue;
+            }
+            NormalStore shard = shards[s];
+            futures.add(submit(() -> {
+                List<String> shardKeys = new ArrayList<>(slot.size());
+                for (int i : slot) {
+                    shardKeys.add(keys.get(i));
+                }
+                shard.mrm(shardKeys);
+                return null;
+            }));
+        }
+        join(futures);
+    }
+
+    /**
+     * 按分片拆成若干子批，每个子批在自己的分片内原子，分片之间不保证
+     */
+    @Override
+    public void write(WriteBatch batch) {
+        Map<Integer, WriteBatch> parts = new HashMap<>();
+        for (Command command : batch.getCommands()) {
+            WriteBatch part = parts.computeIfAbsent(shardOf(command.getKey()), s -> new WriteBatch());
+            if (command instanceof SetCommand) {
+                part.set(command.getKey(), ((SetCommand) command).getValue());
+            } else {
+                part.rm(command.getKey());
+            }
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Map.Entry<Integer, WriteBatch> part : parts.entrySet()) {
+            NormalStore shard = shards[part.getKey()];
+            futures.add(submit(() -> {
+                shard.write(part.getValue());
+                return null;
+            }));
+        }
+        join(futures);
+    }
+
+    /**
+     * 每个分片各查一页再归并：结果只保留小于所有分片nextKey的key，
+     * 这样下一页从最小的nextKey继续不会漏掉任何分片的数据
+     */
+    @Override
+    public ScanResult scan(String startKey, String endKey, int limit) {
+        List<CompletableFuture<ScanResult>> futures = new ArrayList<>(shards.length);
+        for (NormalStore shard : shards) {
+            futures.add(submit(() -> shard.scan(startKey, endKey, limit)));
+        }
+        join(futures);
+        List<ScanResult> pages = new ArrayList<>(shards.length);
+        String bound = null;
+        for (CompletableFuture<ScanResult> future : futures) {
+            ScanResult page = future.join();
+            pages.add(page);
+            if (page.getNextKey() != null && (bound == null || page.getNextKey().compareTo(bound) < 0)) {
+                bound = page.getNextKey();
+            }
+        }
+        int[] cursors = new int[pages.size()];
+        List<String> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        while (true) {
+            int min = -1;
+            for (int s = 0; s < pages.size(); s++) {
+                List<String> shardKeys = pages.get(s).getKeys();
+                if (cursors[s] < shardKeys.size() && (min < 0
+                        || shardKeys.get(cursors[s]).compareTo(pages.get(min).getKeys().get(cursors[min])) < 0)) {
+                    min = s;
+                }
+            }
+            if (min < 0) {
+                return new ScanResult(keys, values, bound);
+            }
+            String key = pages.get(min).getKeys().get(cursors[min]);
+            if (bound != null && key.compareTo(bound) >= 0) {
+                return new ScanResult(keys, values, bound);
+            }
+            if (keys.size() == limit) {
+                return new ScanResult(keys, values, key);
+            }
+            keys.add(key);
+            values.add(pages.get(min).getValues().get(cursors[min]));
+            cursors[min]++;
+        }
+    }
+
+    @Override
+    public ScanResult prefix(String prefix, int limit) {
+        return scan(prefix, ScanResult.prefixEnd(prefix), limit);
+    }
+
+    /**
+     * 各分片的指标加上分片编号，如 store.shard0.get.count
+     */
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("store.shards", shards.length);
+        for (int s = 0; s < shards.length; s++) {
+            for (Map.Entry<String, Object> entry : shards[s].metrics().entrySet()) {
+                out.put("store.shard" + s + entry.getKey().substring("store".length()), entry.getValue());
+            }
+        }
+        return out;
+    }
+
+    private List<List<Integer>> group(List<String> keys) {
+        List<List<Integer>> slots = new ArrayList<>(shards.length);
+        for (int s = 0; s < shards.length; s++) {
+            slots.add(new ArrayList<>());
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            slots.get(shardOf(keys.get(i))).add(i);
+        }
+        return slots;
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    /**
+     * 等所有分片完成，分片上的异常原样抛出
+     */
+    private static void join(List<? extends CompletableFuture<?>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 依次关闭各分片，等日志落盘和后台任务结束
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        IOException failure = null;
+        for (NormalStore shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                LoggerUtil.error(LOGGER, e, logFormat, "close", "close shard failed");
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
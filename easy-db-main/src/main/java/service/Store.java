@@ -7,12 +7,58 @@
  */
 package service;
 
+import dto.ScanResult;
+
 import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
 
 public interface Store extends Closeable {
     void set(String key, String value);
 
+    /**
+     * 写入ttlMillis毫秒后过期的值，过期后读不到，空间由后台清理和合并回收；
+     * 再次set（不带过期时间）会清除过期时间
+     */
+    void set(String key, String value, long ttlMillis);
+
     String get(String key);
 
     void rm(String key);
+
+    /**
+     * 批量查询，返回的列表和keys一一对应，不存在的key为null
+     */
+    List<String> mget(List<String> keys);
+
+    /**
+     * 批量写入，按kvs的迭代顺序写，一次落盘，和write一样是原子的
+     */
+    void mset(Map<String, String> kvs);
+
+    /**
+     * 批量删除，一次落盘
+     */
+    void mrm(List<String> keys);
+
+    /**
+     * 原子写入一组set和rm：一条批量日志记录，一次落盘，整批可见，崩溃后整批恢复或整批丢弃
+     */
+    void write(WriteBatch batch);
+
+    /**
+     * 按key升序查询[startKey, endKey)内最多limit个key，startKey为null从头开始，endKey为null不设上界。
+     * 一页是同一时刻的快照；用结果的nextKey作为startKey继续翻页，nextKey为null表示读完
+     */
+    ScanResult scan(String startKey, String endKey, int limit);
+
+    /**
+     * 查询以prefix开头的key，翻页时用scan(nextKey, ScanResult.prefixEnd(prefix), limit)
+     */
+    ScanResult prefix(String prefix, int limit);
+
+    /**
+     * 当前的指标快照，名字到数值，按固定顺序排列
+     */
+    Map<String, Object> metrics();
 }
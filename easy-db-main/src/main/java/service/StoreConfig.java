@@ -0,0 +1,230 @@
+/*
+ *@Type StoreConfig.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/14 10:15
+ * @version
+ */
+package service;
+
+import lombok.Getter;
+import lombok.Setter;
+import service.index.IndexTypeEnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+@Setter
+@Getter
+public class StoreConfig {
+    public static final String PREFIX = "store.";
+
+    /**
+     * 数据目录，分片时每个分片在其下的 shard-N 子目录
+     */
+    private String dataDir = "data";
+
+    /**
+     * 分片数，大于1时用ShardedStore
+     */
+    private int shards = 1;
+
+    /**
+     * 显式指定每个分片的数据目录（可以在不同磁盘上），不为空时忽略dataDir和shards
+     */
+    private List<String> dataDirs = new ArrayList<>();
+
+    /**
+     * 刷盘策略，默认ALWAYS：每组写入fsync之后才确认，确认过的写入崩溃后不丢；
+     * INTERVAL在崩溃时最多丢一个间隔内已确认的写入，需要显式配置
+     */
+    private FsyncTypeEnum fsyncType = FsyncTypeEnum.ALWAYS;
+
+    /**
+     * INTERVAL策略下的刷盘间隔（毫秒）
+     */
+    private long fsyncIntervalMs = 1000L;
+
+    /**
+     * 组提交时一次最多合并的写入次数，一次批量写入算一次
+     */
+    private int groupCommitMaxBatch = 4096;
+
+    /**
+     * 持久化阈值，日志（内存表）超过这个字节数就刷成SSTable
+     */
+    private int storeThreshold = 4 * 1024 * 1024;
+
+    /**
+     * SSTable数据块大小
+     */
+    private int blockSize = 4 * 1024;
+
+    /**
+     * SSTable数量达到这个值时触发后台合并，每次合并重写全部SSTable，调大可以降低写放大，代价是旧版本占的空间回收得更晚，不建索引时读要查的表也更多
+     */
+    private int compactionTrigger = 4;
+
+    /**
+     * SSTable是否用mmap读，关闭时用FileChannel的positional read
+     */
+    private boolean mmapReads = true;
+
+    /**
+     * 索引实现，key数量很大时用OFF_HEAP减少堆占用和GC停顿，NONE时不建索引、按表查找
+     */
+    private IndexTypeEnum indexType = IndexTypeEnum.HASH;
+
+    /**
+     * 堆外索引的初始容量
+     */
+    private int indexInitialCapacity = 1 << 16;
+
+    /**
+     * 磁盘读出的value的缓存大小（字节），0表示不缓存。分片时每个分片各一份
+     */
+    private long valueCacheBytes = 32L * 1024 * 1024;
+
+    /**
+     * 每个SSTable的布隆过滤器的误判率，0.01约为每个key 9.6位
+     */
+    private double bloomFalsePositiveRate = 0.01;
+
+    /**
+     * SSTable数据块的压缩算法，LZ4或NONE，也可以是通过BlockCodecs.register注册的其他实现
+     */
+    private String compression = "LZ4";
+
+    /**
+     * 解压后的数据块缓存大小（字节），0表示不缓存。分片时每个分片各一份
+     */
+    private long blockCacheBytes = 8L * 1024 * 1024;
+
+    /**
+     * 后台清理过期key的间隔（毫秒），0表示只在读到时和合并时处理过期
+     */
+    private int expireIntervalMs = 100;
+
+    /**
+     * 后台清理一步最多处理的过期key数，每步之间检查时间，一轮不超过间隔的四分之一
+     */
+    private int expireBatchSize = 256;
+
+    /**
+     * 每个分片的数据目录
+     */
+    public List<String> shardDirs() {
+        if (!dataDirs.isEmpty()) {
+            return dataDirs;
+        }
+        if (shards <= 1) {
+            List<String> dirs = new ArrayList<>();
+            dirs.add(dataDir);
+            return dirs;
+        }
+        List<String> dirs = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            dirs.add(dataDir + File.separator + "shard-" + i);
+        }
+        return dirs;
+    }
+
+    /**
+     * 从classpath读取配置，文件不存在时全部用默认值
+     */
+    public static StoreConfig load(String resource) {
+        Properties properties = new Properties();
+        try (InputStream in = StoreConfig.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * 读取 store.dataDir、store.shards、store.fsyncType 等配置项，缺省的保持默认值
+     */
+    public static StoreConfig fromProperties(Properties properties) {
+        StoreConfig config = new StoreConfig();
+        config.setDataDir(properties.getProperty(PREFIX + "dataDir", config.getDataDir()).trim());
+        config.setShards(intProperty(properties, "shards", config.getShards()));
+        String dataDirs = properties.getProperty(PREFIX + "dataDirs");
+        if (dataDirs != null) {
+            for (String dir : dataDirs.split(",")) {
+                if (!dir.trim().isEmpty()) {
+                    config.getDataDirs().add(dir.trim());
+                }
+            }
+        }
+        String fsyncType = properties.getProperty(PREFIX + "fsyncType");
+        if (fsyncType != null) {
+            config.setFsyncType(FsyncTypeEnum.valueOf(fsyncType.trim().toUpperCase()));
+        }
+        config.setFsyncIntervalMs(intProperty(properties, "fsyncIntervalMs", (int) config.getFsyncIntervalMs()));
+        config.setGroupCommitMaxBatch(intProperty(properties, "groupCommitMaxBatch", config.getGroupCommitMaxBatch()));
+        config.setStoreThreshold(intProperty(properties, "storeThreshold", config.getStoreThreshold()));
+        config.setBlockSize(intProperty(properties, "blockSize", config.getBlockSize()));
+        config.setCompactionTrigger(intProperty(properties, "compactionTrigger", config.getCompactionTrigger()));
+        String mmapReads = properties.getProperty(PREFIX + "mmapReads");
+        if (mmapReads != null) {
+            config.setMmapReads(Boolean.parseBoolean(mmapReads.trim()));
+        }
+        String indexType = properties.getProperty(PREFIX + "indexType");
+        if (indexType != null) {
+            config.setIndexType(IndexTypeEnum.valueOf(indexType.trim().toUpperCase()));
+        }
+        config.setIndexInitialCapacity(intProperty(properties, "indexInitialCapacity", config.getIndexInitialCapacity()));
+        String valueCacheBytes = properties.getProperty(PREFIX + "valueCacheBytes");
+        if (valueCacheBytes != null) {
+            config.setValueCacheBytes(Long.parseLong(valueCacheBytes.trim()));
+        }
+        String bloomFalsePositiveRate = properties.getProperty(PREFIX + "bloomFalsePositiveRate");
+        if (bloomFalsePositiveRate != null) {
+            config.setBloomFalsePositiveRate(Double.parseDouble(bloomFalsePositiveRate.trim()));
+        }
+        config.setCompression(properties.getProperty(PREFIX + "compression", config.getCompression()).trim());
+        String blockCacheBytes = properties.getProperty(PREFIX + "blockCacheBytes");
+        if (blockCacheBytes != null) {
+            config.setBlockCacheBytes(Long.parseLong(blockCacheBytes.trim()));
+        }
+        config.setExpireIntervalMs(intProperty(properties, "expireIntervalMs", config.getExpireIntervalMs()));
+        config.setExpireBatchSize(intProperty(properties, "expireBatchSize", config.getExpireBatchSize()));
+        return config;
+    }
+
+    private static int intProperty(Properties properties, String name, int defaultValue) {
+        String value = properties.getProperty(PREFIX + name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    @Override
+    public String toString() {
+        return "StoreConfig{" +
+                "dataDir='" + dataDir + '\'' +
+                ", shards=" + shards +
+                ", dataDirs=" + dataDirs +
+                ", fsyncType=" + fsyncType +
+                ", fsyncIntervalMs=" + fsyncIntervalMs +
+                ", groupCommitMaxBatch=" + groupCommitMaxBatch +
+                ", storeThreshold=" + storeThreshold +
+                ", blockSize=" + blockSize +
+                ", compactionTrigger=" + compactionTrigger +
+                ", mmapReads=" + mmapReads +
+                ", indexType=" + indexType +
+                ", indexInitialCapacity=" + indexInitialCapacity +
+                ", valueCacheBytes=" + valueCacheBytes +
+                ", bloomFalsePositiveRate=" + bloomFalsePositiveRate +
+                ", compression='" + compression + '\'' +
+                ", blockCacheBytes=" + blockCacheBytes +
+                ", expireIntervalMs=" + expireIntervalMs +
+                ", expireBatchSize=" + expireBatchSize +
+                '}';
+    }
+}
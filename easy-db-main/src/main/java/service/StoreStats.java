@@ -0,0 +1,110 @@
+/*
+ *@Type StoreStats.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/28 10:10
+ * @version
+ */
+package service;
+
+import utils.ConcurrentHistogram;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * NormalStore各操作的次数和耗时，以及内存表锁的等待时间，都用分段计数，
+ * 多线程同时记录不会互相争用
+ */
+public class StoreStats {
+
+    private final ConcurrentHistogram set = new ConcurrentHistogram();
+    private final ConcurrentHistogram get = new ConcurrentHistogram();
+    private final ConcurrentHistogram rm = new ConcurrentHistogram();
+    private final ConcurrentHistogram mget = new ConcurrentHistogram();
+    private final ConcurrentHistogram mset = new ConcurrentHistogram();
+    private final ConcurrentHistogram mrm = new ConcurrentHistogram();
+    private final ConcurrentHistogram write = new ConcurrentHistogram();
+    private final ConcurrentHistogram scan = new ConcurrentHistogram();
+
+    /**
+     * 获取memTableLock（读锁或写锁）的等待时间
+     */
+    private final ConcurrentHistogram memTableLockWait = new ConcurrentHistogram();
+
+    /**
+     * 抛出异常的操作次数
+     */
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * 过期后从索引中移除或刷盘时转成删除标记的key数
+     */
+    private final LongAdder expired = new LongAdder();
+
+    public ConcurrentHistogram getSet() {
+        return set;
+    }
+
+    public ConcurrentHistogram getGet() {
+        return get;
+    }
+
+    public ConcurrentHistogram getRm() {
+        return rm;
+    }
+
+    public ConcurrentHistogram getMget() {
+        return mget;
+    }
+
+    public ConcurrentHistogram getMset() {
+        return mset;
+    }
+
+    public ConcurrentHistogram getMrm() {
+        return mrm;
+    }
+
+    public ConcurrentHistogram getWrite() {
+        return write;
+    }
+
+    public ConcurrentHistogram getScan() {
+        return scan;
+    }
+
+    public ConcurrentHistogram getMemTableLockWait() {
+        return memTableLockWait;
+    }
+
+    void error() {
+        errors.increment();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    void expired(int count) {
+        expired.add(count);
+    }
+
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    public void putMetrics(String prefix, Map<String, Object> out) {
+        set.putMetrics(prefix + "set", out);
+        get.putMetrics(prefix + "get", out);
+        rm.putMetrics(prefix + "rm", out);
+        mget.putMetrics(prefix + "mget", out);
+        mset.putMetrics(prefix + "mset", out);
+        mrm.putMetrics(prefix + "mrm", out);
+        write.putMetrics(prefix + "write", out);
+        scan.putMetrics(prefix + "scan", out);
+        memTableLockWait.putMetrics(prefix + "memTableLockWait", out);
+        out.put(prefix + "errors", getErrors());
+        out.put(prefix + "expired", getExpired());
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ *@Type WriteBatch.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/24 10:30
+ * @version
+ */
+package service;
+
+import model.command.Command;
+import model.command.RmCommand;
+import model.command.SetCommand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一组原子写入：Store.write时作为一条带校验的批量记录写入日志，一次落盘，
+ * 要么全部可见要么都不可见，崩溃恢复时也是整批回放或整批丢弃。
+ * 同一个key的多次操作以最后一次为准。非线程安全
+ */
+public class WriteBatch {
+    private final List<Command> commands = new ArrayList<>();
+
+    public WriteBatch set(String key, String value) {
+        commands.add(new SetCommand(key, value));
+        return this;
+    }
+
+    public WriteBatch rm(String key) {
+        commands.add(new RmCommand(key));
+        return this;
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    public boolean isEmpty() {
+        return commands.isEmpty();
+    }
+
+    public void clear() {
+        commands.clear();
+    }
+
+    public List<Command> getCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *@Type BlockCache.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/26 15:20
+ * @version
+ */
+package service.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 解压后的SSTable数据块缓存，按字节数限制大小，分段LRU。
+ * 表是不可变的，表编号也不会复用，所以缓存的块不需要作废，被合并掉的表的块自然被淘汰
+ */
+public class BlockCache {
+
+    private static final int SEGMENTS = 16;
+
+    /**
+     * 每个块的固定开销估算：链表节点、Long和数组头
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final Segment[] segments;
+
+    private final CacheStats stats = new CacheStats();
+
+    private final long capacityBytes;
+
+    public BlockCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacityBytes / SEGMENTS);
+        }
+    }
+
+    private static long keyOf(int tableId, int block) {
+        return (long) tableId << 32 | (block & 0xffffffffL);
+    }
+
+    private Segment segmentOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return segments[(int) (h >>> 60) & (SEGMENTS - 1)];
+    }
+
+    public byte[] get(int tableId, int block) {
+        long key = keyOf(tableId, block);
+        byte[] bytes = segmentOf(key).get(key);
+        if (bytes == null) {
+            stats.miss();
+        } else {
+            stats.hit();
+        }
+        return bytes;
+    }
+
+    public void put(int tableId, int block, byte[] bytes) {
+        long key = keyOf(tableId, block);
+        segmentOf(key).put(key, bytes);
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    /**
+     * 当前占用的字节数（估算）
+     */
+    public long getUsedBytes() {
+        long used = 0;
+        for (Segment segment : segments) {
+            used += segment.usedBytes();
+        }
+        return used;
+    }
+
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    private class Segment {
+        private final long capacity;
+        private final LinkedHashMap<Long, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+        private long used;
+
+        Segment(long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized byte[] get(long key) {
+            return blocks.get(key);
+        }
+
+        synchronized void put(long key, byte[] bytes) {
+            long weight = weigh(bytes);
+            if (weight > capacity) {
+                return;
+            }
+            byte[] old = blocks.put(key, bytes);
+            if (old != null) {
+                used -= weigh(old);
+            }
+            used += weight;
+            Iterator<Map.Entry<Long, byte[]>> it = blocks.entrySet().iterator();
+            while (used > capacity && it.hasNext()) {
+                used -= weigh(it.next().getValue());
+                it.remove();
+                stats.evict();
+            }
+        }
+
+        synchronized long usedBytes() {
+            return used;
+        }
+    }
+
+    private static long weigh(byte[] bytes) {
+        return ENTRY_OVERHEAD + bytes.length;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ *@Type CacheStats.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/25 14:20
+ * @version
+ */
+package service.cache;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * value缓存的累计指标，读路径上用LongAdder计数，多线程不争用同一个变量
+ */
+public class CacheStats {
+    /**
+     * 命中次数
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * 未命中、需要读磁盘的次数
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * 因为容量不够被淘汰的条数
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 因为写入被作废的条数
+     */
+    private final LongAdder invalidations = new LongAdder();
+
+    void hit() {
+        hits.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    void evict() {
+        evictions.increment();
+    }
+
+    void invalidate() {
+        invalidations.increment();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public double getHitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void putMetrics(String prefix, Map<String, Object> out) {
+        out.put(prefix + "hits", getHits());
+        out.put(prefix + "misses", getMisses());
+        out.put(prefix + "hitRate", Math.round(getHitRate() * 10000) / 10000.0);
+        out.put(prefix + "evictions", getEvictions());
+        out.put(prefix + "invalidations", getInvalidations());
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", invalidations=" + invalidations +
+                ", hitRate=" + String.format("%.4f", getHitRate()) +
+                '}';
+    }
+}
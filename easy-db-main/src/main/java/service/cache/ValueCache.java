@@ -0,0 +1,229 @@
+/*
+ *@Type ValueCache.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/25 14:05
+ * @version
+ */
+package service.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 磁盘读路径前面的value缓存，按字节数限制大小，分段的SLRU淘汰：
+ * 新数据进试用区，在试用区再次命中才升进保护区，保护区满了把最久没用的降回试用区，
+ * 淘汰只从试用区尾部开始。一次性的扫描读不会把反复读的热点key挤出去。
+ * <p>
+ * 写入后由invalidate作废。读线程在查内存表之前取stamp，读完磁盘后用putIfFresh放入，
+ * 期间这个分段有过作废就放弃，避免旧值在写入之后才被放进缓存
+ */
+public class ValueCache {
+
+    private static final int SEGMENTS = 16;
+
+    /**
+     * 保护区占每个分段容量的比例
+     */
+    private static final double PROTECTED_RATIO = 0.8;
+
+    /**
+     * 每条缓存的固定开销估算：两个链表节点、Entry和String对象头
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final Segment[] segments;
+
+    private final CacheStats stats = new CacheStats();
+
+    private final long capacityBytes;
+
+    public ValueCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacityBytes / SEGMENTS);
+        }
+    }
+
+    private Segment segmentOf(String key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * 读之前取的版本号，传给putIfFresh
+     */
+    public long stamp(String key) {
+        return segmentOf(key).stamp;
+    }
+
+    public String get(String key) {
+        String value = segmentOf(key).get(key);
+        if (value == null) {
+            stats.miss();
+        } else {
+            stats.hit();
+        }
+        return value;
+    }
+
+    /**
+     * 从stamp之后这个分段没有过写入时才放入
+     */
+    public void putIfFresh(String key, String value, long stamp) {
+        segmentOf(key).put(key, value, stamp);
+    }
+
+    /**
+     * key被写入或删除，在写入内存表之后调用
+     */
+    public void invalidate(String key) {
+        segmentOf(key).invalidate(key);
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    /**
+     * 当前缓存的字节数估算
+     */
+    public long weightedSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.weight();
+        }
+        return size;
+    }
+
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    private static int weigh(String key, String value) {
+        return ENTRY_OVERHEAD + 2 * (key.length() + value.length());
+    }
+
+    private static class Entry {
+        private final String value;
+        private final int weight;
+
+        Entry(String value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private class Segment {
+        private final long capacity;
+        private final long protectedCapacity;
+
+        /**
+         * 按访问顺序排列，头部是最久没用的
+         */
+        private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, Entry> protectedArea = new LinkedHashMap<>(16, 0.75f, true);
+        private long probationWeight;
+        private long protectedWeight;
+
+        /**
+         * 每次作废加一，只在锁内修改
+         */
+        private volatile long stamp;
+
+        Segment(long capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = (long) (capacity * PROTECTED_RATIO);
+        }
+
+        synchronized String get(String key) {
+            Entry entry = protectedArea.get(key);
+            if (entry != null) {
+                return entry.value;
+            }
+            entry = probation.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            // 试用区第二次命中，升进保护区
+            probationWeight -= entry.weight;
+            protectedArea.put(key, entry);
+            protectedWeight += entry.weight;
+            demote();
+            return entry.value;
+        }
+
+        synchronized void put(String key, String value, long expected) {
+            if (stamp != expected) {
+                return;
+            }
+            int weight = weigh(key, value);
+            if (weight > capacity) {
+                return;
+            }
+            remove(key);
+            probation.put(key, new Entry(value, weight));
+            probationWeight += weight;
+            evict();
+        }
+
+        synchronized void invalidate(String key) {
+            stamp++;
+            if (remove(key)) {
+                stats.invalidate();
+            }
+        }
+
+        synchronized long weight() {
+            return probationWeight + protectedWeight;
+        }
+
+        private boolean remove(String key) {
+            Entry entry = probation.remove(key);
+            if (entry != null) {
+                probationWeight -= entry.weight;
+                return true;
+            }
+            entry = protectedArea.remove(key);
+            if (entry != null) {
+                protectedWeight -= entry.weight;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 保护区超出比例时把最久没用的降回试用区
+         */
+        private void demote() {
+            Iterator<Map.Entry<String, Entry>> it = protectedArea.entrySet().iterator();
+            while (protectedWeight > protectedCapacity && it.hasNext()) {
+                Map.Entry<String, Entry> eldest = it.next();
+                it.remove();
+                protectedWeight -= eldest.getValue().weight;
+                probation.put(eldest.getKey(), eldest.getValue());
+                probationWeight += eldest.getValue().weight;
+            }
+            evict();
+        }
+
+        private void evict() {
+            Iterator<Map.Entry<String, Entry>> it = probation.entrySet().iterator();
+            while (probationWeight + protectedWeight > capacity && it.hasNext()) {
+                Map.Entry<String, Entry> eldest = it.next();
+                it.remove();
+                probationWeight -= eldest.getValue().weight;
+                stats.evict();
+            }
+            it = protectedArea.entrySet().iterator();
+            while (probationWeight + protectedWeight > capacity && it.hasNext()) {
+                Map.Entry<String, Entry> eldest = it.next();
+                it.remove();
+                protectedWeight -= eldest.getValue().weight;
+                stats.evict();
+            }
+        }
+    }
+}
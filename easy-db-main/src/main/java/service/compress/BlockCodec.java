@@ -0,0 +1,34 @@
+/*
+ *@Type BlockCodec.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/26 14:10
+ * @version
+ */
+package service.compress;
+
+import java.io.IOException;
+
+/**
+ * SSTable数据块的压缩算法。编号写在块索引里，读表时按编号找回实现，
+ * 所以编号一旦使用就不能改，新的实现通过BlockCodecs.register注册
+ */
+public interface BlockCodec {
+
+    /**
+     * 写进块索引的编号，0保留给不压缩
+     */
+    byte getId();
+
+    String getName();
+
+    /**
+     * 压缩src[off, off + len)，返回压缩后的字节；压缩后不比原来小时返回null，调用方按原样存
+     */
+    byte[] compress(byte[] src, int off, int len);
+
+    /**
+     * 解压到dst[dstOff, dstOff + rawLen)，解出的长度不等于rawLen或数据损坏时抛IOException
+     */
+    void decompress(byte[] src, int off, int len, byte[] dst, int dstOff, int rawLen) throws IOException;
+}
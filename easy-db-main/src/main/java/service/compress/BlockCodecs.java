@@ -0,0 +1,72 @@
+/*
+ *@Type BlockCodecs.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/26 14:50
+ * @version
+ */
+package service.compress;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 块压缩算法的注册表，按配置的名字选择写入用的算法，读表时按块索引里的编号找回
+ */
+public class BlockCodecs {
+
+    /**
+     * 不压缩
+     */
+    public static final byte NONE = 0;
+
+    private static final Map<Byte, BlockCodec> BY_ID = new ConcurrentHashMap<>();
+
+    private static final Map<String, BlockCodec> BY_NAME = new ConcurrentHashMap<>();
+
+    static {
+        register(new Lz4Codec());
+    }
+
+    /**
+     * 注册一个实现（如包装了Snappy或zstd的实现），编号和名字都不能和已有的冲突
+     */
+    public static void register(BlockCodec codec) {
+        if (codec.getId() == NONE) {
+            throw new IllegalArgumentException("codec id 0 is reserved");
+        }
+        BlockCodec old = BY_ID.putIfAbsent(codec.getId(), codec);
+        if (old != null && old != codec) {
+            throw new IllegalArgumentException("codec id " + codec.getId() + " already used by " + old.getName());
+        }
+        BY_NAME.put(codec.getName().toUpperCase(), codec);
+    }
+
+    /**
+     * 按编号查找，NONE返回null
+     */
+    public static BlockCodec byId(byte id) {
+        if (id == NONE) {
+            return null;
+        }
+        BlockCodec codec = BY_ID.get(id);
+        if (codec == null) {
+            throw new IllegalStateException("unknown block codec " + id);
+        }
+        return codec;
+    }
+
+    /**
+     * 按名字查找，"NONE"返回null
+     */
+    public static BlockCodec byName(String name) {
+        if ("NONE".equalsIgnoreCase(name)) {
+            return null;
+        }
+        BlockCodec codec = BY_NAME.get(name.toUpperCase());
+        if (codec == null) {
+            throw new IllegalArgumentException("unknown block codec " + name);
+        }
+        return codec;
+    }
+}
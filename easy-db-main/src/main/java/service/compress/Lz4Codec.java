@@ -0,0 +1,205 @@
+/*
+ *@Type Lz4Codec.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/26 14:25
+ * @version
+ */
+package service.compress;
+
+import java.io.IOException;
+
+/**
+ * 纯Java实现的LZ4块格式，不依赖本地库，和lz4的LZ4_compress_default/LZ4_decompress_safe互通。
+ * <pre>
+ * 序列：byte token(高4位字面量长度, 低4位匹配长度-4) | 字面量长度扩展 | 字面量
+ *       | short 匹配距离(小端) | 匹配长度扩展
+ * </pre>
+ * 长度为15时后面跟若干字节累加，直到某字节小于255。最后一个序列只有字面量，
+ * 最后5个字节一定是字面量，最后一个匹配至少在结尾12字节之前开始
+ */
+public class Lz4Codec implements BlockCodec {
+
+    public static final byte ID = 1;
+
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_LOG = 12;
+    private static final int MF_LIMIT = 12;
+    private static final int LAST_LITERALS = 5;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int RUN_MASK = 15;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "LZ4";
+    }
+
+    public static int maxCompressedLength(int len) {
+        return len + len / 255 + 16;
+    }
+
+    @Override
+    public byte[] compress(byte[] src, int off, int len) {
+        byte[] dst = new byte[maxCompressedLength(len)];
+        int n = compress(src, off, len, dst);
+        if (n >= len) {
+            return null;
+        }
+        byte[] out = new byte[n];
+        System.arraycopy(dst, 0, out, 0, n);
+        return out;
+    }
+
+    /**
+     * 贪心匹配：4字节的哈希表记最近一次出现的位置，命中后向前向后扩展，
+     * 连续找不到匹配时逐渐加大步长，不可压缩的数据也不会太慢
+     */
+    private static int compress(byte[] src, int off, int len, byte[] dst) {
+        int end = off + len;
+        int anchor = off;
+        int op = 0;
+        if (len >= MF_LIMIT + 1) {
+            int[] table = new int[1 << HASH_LOG];
+            int matchLimit = end - MF_LIMIT;
+            int ip = off;
+            int misses = 0;
+            while (ip < matchLimit) {
+                int seq = readInt(src, ip);
+                int h = hash(seq);
+                // 表里存位置 + 1，0表示空
+                int ref = table[h] - 1;
+                table[h] = ip + 1;
+                if (ref < off || ip - ref > MAX_DISTANCE || readInt(src, ref) != seq) {
+                    ip += 1 + (misses++ >>> 6);
+                    continue;
+                }
+                misses = 0;
+                while (ip > anchor && ref > off && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLen = MIN_MATCH;
+                int matchEnd = end - LAST_LITERALS;
+                while (ip + matchLen < matchEnd && src[ip + matchLen] == src[ref + matchLen]) {
+                    matchLen++;
+                }
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLen, dst, op);
+                ip += matchLen;
+                anchor = ip;
+                // 匹配末尾附近的位置也登记进去，提高下一次命中的机会
+                table[hash(readInt(src, ip - 2))] = ip - 2 + 1;
+            }
+        }
+        // 剩下的都作为字面量
+        int litLen = end - anchor;
+        int tokenPos = op++;
+        op = writeLength(litLen, dst, op);
+        dst[tokenPos] = (byte) (Math.min(litLen, RUN_MASK) << 4);
+        System.arraycopy(src, anchor, dst, op, litLen);
+        return op + litLen;
+    }
+
+    private static int writeSequence(byte[] src, int anchor, int litLen, int distance, int matchLen,
+                                     byte[] dst, int op) {
+        int tokenPos = op++;
+        op = writeLength(litLen, dst, op);
+        System.arraycopy(src, anchor, dst, op, litLen);
+        op += litLen;
+        dst[op++] = (byte) distance;
+        dst[op++] = (byte) (distance >>> 8);
+        op = writeLength(matchLen - MIN_MATCH, dst, op);
+        dst[tokenPos] = (byte) ((Math.min(litLen, RUN_MASK) << 4) | Math.min(matchLen - MIN_MATCH, RUN_MASK));
+        return op;
+    }
+
+    /**
+     * 长度不小于15时写扩展字节
+     */
+    private static int writeLength(int len, byte[] dst, int op) {
+        if (len < RUN_MASK) {
+            return op;
+        }
+        len -= RUN_MASK;
+        while (len >= 255) {
+            dst[op++] = (byte) 255;
+            len -= 255;
+        }
+        dst[op++] = (byte) len;
+        return op;
+    }
+
+    @Override
+    public void decompress(byte[] src, int off, int len, byte[] dst, int dstOff, int rawLen) throws IOException {
+        try {
+            int ip = off;
+            int end = off + len;
+            int op = dstOff;
+            int opEnd = dstOff + rawLen;
+            while (true) {
+                int token = src[ip++] & 0xff;
+                int litLen = token >>> 4;
+                if (litLen == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        litLen += b;
+                    } while (b == 255);
+                }
+                if (litLen > end - ip || litLen > opEnd - op) {
+                    throw new IOException("lz4 literal overflow");
+                }
+                System.arraycopy(src, ip, dst, op, litLen);
+                ip += litLen;
+                op += litLen;
+                if (ip == end) {
+                    break;
+                }
+                int distance = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+                ip += 2;
+                if (distance == 0 || distance > op - dstOff) {
+                    throw new IOException("lz4 bad match distance " + distance);
+                }
+                int matchLen = token & RUN_MASK;
+                if (matchLen == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        matchLen += b;
+                    } while (b == 255);
+                }
+                matchLen += MIN_MATCH;
+                if (matchLen > opEnd - op) {
+                    throw new IOException("lz4 match overflow");
+                }
+                int ref = op - distance;
+                if (distance >= matchLen) {
+                    System.arraycopy(dst, ref, dst, op, matchLen);
+                    op += matchLen;
+                } else {
+                    // 重叠的匹配（如连续重复的字节）只能逐字节复制
+                    for (int i = 0; i < matchLen; i++) {
+                        dst[op++] = dst[ref++];
+                    }
+                }
+            }
+            if (op != opEnd) {
+                throw new IOException("lz4 decompressed " + (op - dstOff) + " bytes, expected " + rawLen);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("corrupt lz4 block", e);
+        }
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    private static int hash(int seq) {
+        return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
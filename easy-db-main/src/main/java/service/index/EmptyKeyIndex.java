@@ -0,0 +1,48 @@
+/*
+ *@Type EmptyKeyIndex.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/26 10:20
+ * @version
+ */
+package service.index;
+
+import model.command.CommandPos;
+
+/**
+ * IndexTypeEnum.NONE时使用的空索引，什么都不存，启动时也不用加载提示文件
+ */
+public class EmptyKeyIndex implements KeyIndex {
+
+    @Override
+    public CommandPos get(String key) {
+        return null;
+    }
+
+    @Override
+    public void put(String key, CommandPos pos) {
+    }
+
+    @Override
+    public void remove(String key) {
+    }
+
+    @Override
+    public boolean replace(String key, CommandPos expected, CommandPos update) {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return 0;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
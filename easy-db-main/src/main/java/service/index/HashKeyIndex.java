@@ -0,0 +1,79 @@
+/*
+ *@Type HashKeyIndex.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/21 10:12
+ * @version
+ */
+package service.index;
+
+import model.command.CommandPos;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于ConcurrentHashMap的索引，key和CommandPos都在堆上
+ */
+public class HashKeyIndex implements KeyIndex {
+
+    /**
+     * 每个条目的大致开销：ConcurrentHashMap.Node 32 + 桶数组 8 + String 24 + char/byte数组头 16 + CommandPos 32
+     */
+    private static final int ENTRY_OVERHEAD = 32 + 8 + 24 + 16 + 32;
+
+    private final ConcurrentHashMap<String, CommandPos> index = new ConcurrentHashMap<>();
+
+    private final LongAdder keyBytes = new LongAdder();
+
+    @Override
+    public CommandPos get(String key) {
+        return index.get(key);
+    }
+
+    @Override
+    public void put(String key, CommandPos pos) {
+        if (index.put(key, pos) == null) {
+            keyBytes.add(key.length());
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        if (index.remove(key) != null) {
+            keyBytes.add(-key.length());
+        }
+    }
+
+    @Override
+    public boolean replace(String key, CommandPos expected, CommandPos update) {
+        if (update != null) {
+            return index.replace(key, expected, update);
+        }
+        if (index.remove(key, expected)) {
+            keyBytes.add(-key.length());
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public long memoryBytes() {
+        return (long) index.size() * ENTRY_OVERHEAD + keyBytes.sum();
+    }
+
+    @Override
+    public void close() {
+        index.clear();
+    }
+
+    @Override
+    public String toString() {
+        return index.toString();
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ *@Type IndexTypeEnum.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/21 10:08
+ * @version
+ */
+package service.index;
+
+public enum IndexTypeEnum {
+    /*
+     * 堆上的HashMap
+     * */
+    HASH,
+    /*
+     * 堆外的开放寻址表
+     * */
+    OFF_HEAP,
+    /*
+     * 不建索引，查询时从新到旧逐个SSTable查找，靠布隆过滤器跳过不含该key的表
+     * */
+    NONE
+}
@@ -0,0 +1,36 @@
+/*
+ *@Type KeyIndex.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/21 10:05
+ * @version
+ */
+package service.index;
+
+import model.command.CommandPos;
+
+import java.io.Closeable;
+
+/**
+ * key到记录位置的索引，实现必须线程安全：读不阻塞其他key的读写
+ */
+public interface KeyIndex extends Closeable {
+    CommandPos get(String key);
+
+    void put(String key, CommandPos pos);
+
+    void remove(String key);
+
+    /**
+     * 仅当key当前的位置等于expected时换成update（为null时删除），返回是否替换。
+     * 合并切换索引时用，不会覆盖期间刷盘写入的更新的位置
+     */
+    boolean replace(String key, CommandPos expected, CommandPos update);
+
+    int size();
+
+    /**
+     * 索引占用的内存字节数（堆上实现为估算值）
+     */
+    long memoryBytes();
+}
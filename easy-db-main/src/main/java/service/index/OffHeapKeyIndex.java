@@ -0,0 +1,384 @@
+/*
+ *@Type OffHeapKeyIndex.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/21 10:40
+ * @version
+ */
+package service.index;
+
+import model.command.CommandPos;
+import utils.HashUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 堆外的开放寻址（线性探测）hash索引，堆上只剩少量ByteBuffer对象，不随key数量增长。
+ * 按hash高位分成若干段，每段独立扩容，单次扩容的停顿只有整体的1/SEGMENTS；
+ * 每段一把读写锁，不同段的读写互不阻塞，同一段内的读也可以并发。
+ * <pre>
+ * 槽位(32字节)：long hash, long keyRef, int tableId, int len, long pos
+ * keyRef：0表示空槽，-1表示已删除，否则为key在段内key区的位置+1
+ * key区：int长度 + UTF-8字节，按块分配
+ * </pre>
+ */
+public class OffHeapKeyIndex implements KeyIndex {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    private static final int SLOT_SIZE = 32;
+    private static final int HASH = 0;
+    private static final int KEY_REF = 8;
+    private static final int TABLE_ID = 16;
+    private static final int LEN = 20;
+    private static final int POS = 24;
+
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+
+    /**
+     * 每页的槽位数，单页 2^16 * 32 = 2MB
+     */
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+    /**
+     * key区每块大小
+     */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private static final float LOAD_FACTOR = 0.7f;
+
+    private final Segment[] segments;
+
+    public OffHeapKeyIndex(int initialCapacity) {
+        int perSegment = Math.max(16, Integer.highestOneBit(Math.max(1, initialCapacity / SEGMENTS) - 1) << 1);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    @Override
+    public CommandPos get(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(bytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.readLock().lock();
+        try {
+            return segment.get(bytes, hash);
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(String key, CommandPos pos) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(bytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.writeLock().lock();
+        try {
+            segment.put(bytes, hash, pos);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(bytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.writeLock().lock();
+        try {
+            segment.remove(bytes, hash);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean replace(String key, CommandPos expected, CommandPos update) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(bytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.writeLock().lock();
+        try {
+            if (!expected.equals(segment.get(bytes, hash))) {
+                return false;
+            }
+            if (update == null) {
+                segment.remove(bytes, hash);
+            } else {
+                segment.put(bytes, hash, update);
+            }
+            return true;
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            segment.lock.readLock().lock();
+            try {
+                bytes += segment.memoryBytes();
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 直接内存在ByteBuffer被回收时释放
+     */
+    @Override
+    public void close() {
+        for (Segment segment : segments) {
+            segment.lock.writeLock().lock();
+            try {
+                segment.init(16);
+            } finally {
+                segment.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    /**
+     * 高位用来选段，低位用来定位槽
+     */
+    static long hash(byte[] bytes) {
+        return HashUtil.hash64(bytes);
+    }
+
+    private static final class Segment {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private ByteBuffer[] pages;
+        private int capacity;
+        private int mask;
+        /**
+         * 有效条目数，size()不加锁读
+         */
+        private volatile int size;
+        /**
+         * 有效条目 + 删除标记占用的槽位数
+         */
+        private int used;
+
+        private List<ByteBuffer> chunks;
+        private long keyBytes;
+        private long deadKeyBytes;
+
+        Segment(int capacity) {
+            init(capacity);
+        }
+
+        private void init(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            int pageCount = Math.max(1, capacity >>> PAGE_SHIFT);
+            int slotsPerPage = Math.min(capacity, 1 << PAGE_SHIFT);
+            this.pages = new ByteBuffer[pageCount];
+            for (int i = 0; i < pageCount; i++) {
+                pages[i] = ByteBuffer.allocateDirect(slotsPerPage * SLOT_SIZE);
+            }
+            this.size = 0;
+            this.used = 0;
+            this.chunks = new ArrayList<>();
+            this.keyBytes = 0;
+            this.deadKeyBytes = 0;
+        }
+
+        private ByteBuffer page(int slot) {
+            return pages[slot >>> PAGE_SHIFT];
+        }
+
+        private int offset(int slot) {
+            return (slot & PAGE_MASK) * SLOT_SIZE;
+        }
+
+        /**
+         * 找到key所在的槽，找不到返回-1
+         */
+        private int find(byte[] key, long hash) {
+            int slot = (int) hash & mask;
+            while (true) {
+                ByteBuffer page = page(slot);
+                int off = offset(slot);
+                long ref = page.getLong(off + KEY_REF);
+                if (ref == EMPTY) {
+                    return -1;
+                }
+                if (ref != DELETED && page.getLong(off + HASH) == hash && keyEquals(ref, key)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        CommandPos get(byte[] key, long hash) {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            ByteBuffer page = page(slot);
+            int off = offset(slot);
+            return new CommandPos(page.getInt(off + TABLE_ID), page.getLong(off + POS), page.getInt(off + LEN));
+        }
+
+        void put(byte[] key, long hash, CommandPos pos) {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                if (used + 1 > capacity * LOAD_FACTOR) {
+                    rehash(size + 1 > capacity * LOAD_FACTOR / 2 ? capacity << 1 : capacity);
+                }
+                slot = insertSlot(hash);
+                ByteBuffer page = page(slot);
+                int off = offset(slot);
+                if (page.getLong(off + KEY_REF) == EMPTY) {
+                    used++;
+                }
+                page.putLong(off + HASH, hash);
+                page.putLong(off + KEY_REF, storeKey(key));
+                size++;
+            }
+            ByteBuffer page = page(slot);
+            int off = offset(slot);
+            page.putInt(off + TABLE_ID, pos.getTableId());
+            page.putInt(off + LEN, pos.getLen());
+            page.putLong(off + POS, pos.getPos());
+        }
+
+        void remove(byte[] key, long hash) {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return;
+            }
+            page(slot).putLong(offset(slot) + KEY_REF, DELETED);
+            size--;
+            deadKeyBytes += 4 + key.length;
+            // 删除过多时原地重建，回收删除标记和key区
+            if (deadKeyBytes > CHUNK_SIZE && deadKeyBytes > keyBytes / 2) {
+                rehash(capacity);
+            }
+        }
+
+        /**
+         * 插入用的槽：第一个空槽或删除标记
+         */
+        private int insertSlot(long hash) {
+            int slot = (int) hash & mask;
+            while (true) {
+                long ref = page(slot).getLong(offset(slot) + KEY_REF);
+                if (ref == EMPTY || ref == DELETED) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private long storeKey(byte[] key) {
+            int need = 4 + key.length;
+            ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+            if (chunk == null || chunk.remaining() < need) {
+                chunk = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, need));
+                chunks.add(chunk);
+            }
+            int offset = chunk.position();
+            chunk.putInt(key.length);
+            chunk.put(key);
+            keyBytes += need;
+            return (((long) (chunks.size() - 1) << 32) | offset) + 1;
+        }
+
+        private boolean keyEquals(long ref, byte[] key) {
+            long raw = ref - 1;
+            ByteBuffer chunk = chunks.get((int) (raw >>> 32));
+            int offset = (int) raw;
+            if (chunk.getInt(offset) != key.length) {
+                return false;
+            }
+            offset += 4;
+            for (int i = 0; i < key.length; i++) {
+                if (chunk.get(offset + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static byte[] loadKey(List<ByteBuffer> from, long ref) {
+            long raw = ref - 1;
+            ByteBuffer chunk = from.get((int) (raw >>> 32));
+            int offset = (int) raw;
+            byte[] key = new byte[chunk.getInt(offset)];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = chunk.get(offset + 4 + i);
+            }
+            return key;
+        }
+
+        /**
+         * 重建到新容量的表和新的key区，丢掉删除标记和已删除的key
+         */
+        private void rehash(int newCapacity) {
+            ByteBuffer[] oldPages = pages;
+            int oldCapacity = capacity;
+            List<ByteBuffer> oldChunks = chunks;
+            init(newCapacity);
+            for (int slot = 0; slot < oldCapacity; slot++) {
+                ByteBuffer page = oldPages[slot >>> PAGE_SHIFT];
+                int off = (slot & PAGE_MASK) * SLOT_SIZE;
+                long ref = page.getLong(off + KEY_REF);
+                if (ref == EMPTY || ref == DELETED) {
+                    continue;
+                }
+                byte[] key = loadKey(oldChunks, ref);
+                long hash = page.getLong(off + HASH);
+                int target = insertSlot(hash);
+                ByteBuffer targetPage = page(target);
+                int targetOff = offset(target);
+                targetPage.putLong(targetOff + HASH, hash);
+                targetPage.putLong(targetOff + KEY_REF, storeKey(key));
+                targetPage.putInt(targetOff + TABLE_ID, page.getInt(off + TABLE_ID));
+                targetPage.putInt(targetOff + LEN, page.getInt(off + LEN));
+                targetPage.putLong(targetOff + POS, page.getLong(off + POS));
+                size++;
+                used++;
+            }
+        }
+
+        long memoryBytes() {
+            long bytes = 0;
+            for (ByteBuffer page : pages) {
+                bytes += page.capacity();
+            }
+            for (ByteBuffer chunk : chunks) {
+                bytes += chunk.capacity();
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *@Type BloomFilter.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/26 09:40
+ * @version
+ */
+package service.table;
+
+import utils.HashUtil;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SSTable的布隆过滤器，随表一起写入文件，打开表时加载。
+ * mightContain返回false时key一定不在表里，可以跳过这个表的磁盘读取
+ * <pre>
+ * int 哈希函数个数 | int long个数 | long位图...
+ * </pre>
+ * 用一个64位哈希的高低两半做双重哈希，得到k个位置
+ */
+public class BloomFilter {
+
+    private final long[] bits;
+
+    private final int numHashes;
+
+    private BloomFilter(long[] bits, int numHashes) {
+        this.bits = bits;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * 按key数量和期望的误判率确定位数和哈希函数个数
+     */
+    public static BloomFilter create(long[] hashes, int count, double falsePositiveRate) {
+        int n = Math.max(count, 1);
+        double bitsPerKey = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long numBits = Math.max(64, (long) Math.ceil(n * bitsPerKey));
+        int numHashes = Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+        BloomFilter filter = new BloomFilter(new long[(int) ((numBits + 63) >>> 6)], numHashes);
+        for (int i = 0; i < count; i++) {
+            filter.add(hashes[i]);
+        }
+        return filter;
+    }
+
+    /**
+     * key的UTF-8字节的64位哈希（FNV-1a加murmur3的收尾混合），写表和查询用同一个
+     */
+    public static long hash(byte[] key) {
+        return HashUtil.hash64(key);
+    }
+
+    public static long hash(String key) {
+        return hash(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void add(long hash) {
+        long numBits = (long) bits.length << 6;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(long hash) {
+        long numBits = (long) bits.length << 6;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 序列化后的字节数
+     */
+    public int byteSize() {
+        return 4 + 4 + bits.length * 8;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(numHashes);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    public static BloomFilter readFrom(DataInputStream in) throws IOException {
+        int numHashes = in.readInt();
+        int words = in.readInt();
+        if (numHashes <= 0 || words <= 0) {
+            throw new IOException("bad bloom filter header");
+        }
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits, numHashes);
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    public long getNumBits() {
+        return (long) bits.length << 6;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *@Type BloomStats.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/26 10:35
+ * @version
+ */
+package service.table;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 不用索引按表查找时布隆过滤器的累计指标
+ */
+public class BloomStats {
+    /**
+     * 过滤器判定不在、跳过读盘的表次数
+     */
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * 读了数据块的表次数
+     */
+    private final LongAdder blockReads = new LongAdder();
+
+    /**
+     * 过滤器判定可能在、读盘后却没有找到的次数
+     */
+    private final LongAdder falsePositives = new LongAdder();
+
+    public void skip() {
+        skipped.increment();
+    }
+
+    public void blockRead(boolean found) {
+        blockReads.increment();
+        if (!found) {
+            falsePositives.increment();
+        }
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public long getBlockReads() {
+        return blockReads.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * 实际误判率：误判次数 / 表里没有这个key的查找次数
+     */
+    public double getFalsePositiveRate() {
+        long fp = getFalsePositives();
+        long negatives = fp + getSkipped();
+        return negatives == 0 ? 0 : (double) fp / negatives;
+    }
+
+    public void putMetrics(String prefix, Map<String, Object> out) {
+        out.put(prefix + "skipped", getSkipped());
+        out.put(prefix + "blockReads", getBlockReads());
+        out.put(prefix + "falsePositives", getFalsePositives());
+        out.put(prefix + "falsePositiveRate", Math.round(getFalsePositiveRate() * 10000) / 10000.0);
+    }
+
+    @Override
+    public String toString() {
+        return "BloomStats{" +
+                "skipped=" + skipped +
+                ", blockReads=" + blockReads +
+                ", falsePositives=" + falsePositives +
+                ", falsePositiveRate=" + String.format("%.4f", getFalsePositiveRate()) +
+                '}';
+    }
+}
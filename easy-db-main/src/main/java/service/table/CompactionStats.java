@@ -0,0 +1,88 @@
+/*
+ *@Type CompactionStats.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/17 11:05
+ * @version
+ */
+package service.table;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并的累计指标
+ */
+public class CompactionStats {
+    /**
+     * 完成的合并次数
+     */
+    private final AtomicLong compactions = new AtomicLong();
+
+    /**
+     * 回收的磁盘字节数
+     */
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+
+    /**
+     * 因过期被丢弃的记录数
+     */
+    private final AtomicLong expiredRecords = new AtomicLong();
+
+    /**
+     * 合并总耗时（毫秒）
+     */
+    private final AtomicLong totalTimeMs = new AtomicLong();
+
+    /**
+     * 最近一次合并的耗时（毫秒）
+     */
+    private volatile long lastTimeMs;
+
+    public void record(long reclaimed, long expired, long timeMs) {
+        compactions.incrementAndGet();
+        reclaimedBytes.addAndGet(reclaimed);
+        expiredRecords.addAndGet(expired);
+        totalTimeMs.addAndGet(timeMs);
+        lastTimeMs = timeMs;
+    }
+
+    public long getCompactions() {
+        return compactions.get();
+    }
+
+    public long getReclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    public long getExpiredRecords() {
+        return expiredRecords.get();
+    }
+
+    public long getTotalTimeMs() {
+        return totalTimeMs.get();
+    }
+
+    public long getLastTimeMs() {
+        return lastTimeMs;
+    }
+
+    public void putMetrics(String prefix, Map<String, Object> out) {
+        out.put(prefix + "compactions", getCompactions());
+        out.put(prefix + "reclaimedBytes", getReclaimedBytes());
+        out.put(prefix + "expiredRecords", getExpiredRecords());
+        out.put(prefix + "totalTimeMs", getTotalTimeMs());
+        out.put(prefix + "lastTimeMs", getLastTimeMs());
+    }
+
+    @Override
+    public String toString() {
+        return "CompactionStats{" +
+                "compactions=" + compactions +
+                ", reclaimedBytes=" + reclaimedBytes +
+                ", expiredRecords=" + expiredRecords +
+                ", totalTimeMs=" + totalTimeMs +
+                ", lastTimeMs=" + lastTimeMs +
+                '}';
+    }
+}
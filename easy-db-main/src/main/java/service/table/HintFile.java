@@ -0,0 +1,195 @@
+/*
+ *@Type HintFile.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/18 09:50
+ * @version
+ */
+package service.table;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * SSTable的提示文件，只记录每个key的位置，启动时用它重建索引而不用解析整个表
+ * <pre>
+ * long魔数
+ * (int key长度, key, long偏移, int长度, byte标志, [long过期时间])...
+ * int条数, long CRC32
+ * </pre>
+ * 标志的第0位表示删除标记，第1位表示后面带过期时间。旧魔数的文件按无效处理，回退到扫描表并重写
+ */
+public class HintFile {
+
+    public static final String SUFFIX = ".hint";
+    public static final String TMP = ".tmp";
+    public static final long MAGIC = 0x65617379_64624833L;
+    private static final int FLAG_TOMBSTONE = 1;
+    private static final int FLAG_EXPIRE = 2;
+    private static final int TRAILER_SIZE = 4 + 8;
+
+    /**
+     * 每条除key长度和key以外的定长部分：偏移、长度、标志
+     */
+    private static final int ENTRY_FIXED = 8 + 4 + 1;
+
+    public static String genFilePath(String dataDir, String name, int id) {
+        return dataDir + File.separator + String.format("%s_%06d%s", name, id, SUFFIX);
+    }
+
+    /**
+     * 读取提示文件，文件不存在、版本不对、校验失败或内容损坏时返回false，调用方需要回退到扫描SSTable。
+     * 先整体校验CRC，通过后才按长度解析，坏的长度不会导致分配超大数组
+     */
+    public static boolean read(String filePath, HintConsumer consumer) throws IOException {
+        File file = new File(filePath);
+        if (!file.exists() || file.length() < 8 + TRAILER_SIZE) {
+            return false;
+        }
+        long entriesEnd = file.length() - TRAILER_SIZE;
+        List<String> keys = new ArrayList<>();
+        List<long[]> values = new ArrayList<>();
+        try {
+            if (!checksumMatches(file, entriesEnd) || !parse(file, entriesEnd, keys, values)) {
+                return false;
+            }
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+        // 校验通过后才交给调用方，避免半个文件污染索引
+        for (int i = 0; i < keys.size(); i++) {
+            long[] value = values.get(i);
+            consumer.accept(keys.get(i), value[0], (int) value[1], value[2] != 0, value[3]);
+        }
+        return true;
+    }
+
+    /**
+     * CRC覆盖魔数、所有条目和条数，和文件末尾的CRC比较
+     */
+    private static boolean checksumMatches(File file, long entriesEnd) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = entriesEnd + 4;
+            while (remaining > 0) {
+                int n = (int) Math.min(buffer.length, remaining);
+                in.readFully(buffer, 0, n);
+                crc.update(buffer, 0, n);
+                remaining -= n;
+            }
+            return in.readLong() == crc.getValue();
+        }
+    }
+
+    /**
+     * 按条解析，每个长度都先和剩余字节比较，条目区和条数对不上时返回false
+     */
+    private static boolean parse(File file, long entriesEnd, List<String> keys, List<long[]> values) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readLong() != MAGIC) {
+                return false;
+            }
+            long offset = 8;
+            while (offset < entriesEnd) {
+                int keyLen = in.readInt();
+                offset += 4;
+                if (keyLen < 0 || keyLen > entriesEnd - offset - ENTRY_FIXED) {
+                    return false;
+                }
+                byte[] key = new byte[keyLen];
+                in.readFully(key);
+                long pos = in.readLong();
+                int len = in.readInt();
+                byte flags = in.readByte();
+                offset += keyLen + ENTRY_FIXED;
+                long expireAt = 0;
+                if ((flags & FLAG_EXPIRE) != 0) {
+                    if (entriesEnd - offset < 8) {
+                        return false;
+                    }
+                    expireAt = in.readLong();
+                    offset += 8;
+                }
+                keys.add(new String(key, StandardCharsets.UTF_8));
+                values.add(new long[]{pos, len, flags & FLAG_TOMBSTONE, expireAt});
+            }
+            return offset == entriesEnd && in.readInt() == keys.size();
+        }
+    }
+
+    public interface HintConsumer {
+        /**
+         * expireAt为0表示不过期
+         */
+        void accept(String key, long pos, int len, boolean tombstone, long expireAt);
+    }
+
+    /**
+     * 先写临时文件，finish时落盘后再改名
+     */
+    public static class Writer implements Closeable {
+        private final String filePath;
+        private final File tmp;
+        private final FileOutputStream fileOut;
+        private final CheckedOutputStream checked;
+        private final DataOutputStream out;
+        private int count;
+        private boolean finished;
+
+        public Writer(String filePath) throws IOException {
+            this.filePath = filePath;
+            this.tmp = new File(filePath + TMP);
+            this.fileOut = new FileOutputStream(tmp);
+            this.checked = new CheckedOutputStream(new BufferedOutputStream(fileOut, 64 * 1024), new CRC32());
+            this.out = new DataOutputStream(checked);
+            out.writeLong(MAGIC);
+        }
+
+        public void add(String key, long pos, int len, boolean tombstone, long expireAt) throws IOException {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeLong(pos);
+            out.writeInt(len);
+            out.writeByte((tombstone ? FLAG_TOMBSTONE : 0) | (expireAt != 0 ? FLAG_EXPIRE : 0));
+            if (expireAt != 0) {
+                out.writeLong(expireAt);
+            }
+            count++;
+        }
+
+        public void finish() throws IOException {
+            out.writeInt(count);
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            fileOut.getFD().sync();
+            out.close();
+            if (!tmp.renameTo(new File(filePath))) {
+                throw new IOException("rename " + tmp + " failed");
+            }
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                out.close();
+                tmp.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *@Type MergingIterator.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/24 15:40
+ * @version
+ */
+package service.table;
+
+import model.command.Command;
+import utils.CommandCodec;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 范围查询用的多路归并：内存表快照和SSTable按key升序合并，
+ * 同一个key只输出最新来源的版本（包括删除标记，由调用方过滤）
+ */
+public class MergingIterator {
+
+    /**
+     * 一路有序输入
+     */
+    public interface Source {
+        /**
+         * 前进到下一条，没有了返回false
+         */
+        boolean next() throws IOException;
+
+        Command getCommand();
+    }
+
+    private final PriorityQueue<Cursor> heap = new PriorityQueue<>();
+
+    private Command current;
+
+    /**
+     * sources按从新到旧排列，key相同时排在前面的来源覆盖后面的
+     */
+    public MergingIterator(List<Source> sources) throws IOException {
+        for (int i = 0; i < sources.size(); i++) {
+            Cursor cursor = new Cursor(sources.get(i), i);
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+    }
+
+    public boolean next() throws IOException {
+        if (heap.isEmpty()) {
+            current = null;
+            return false;
+        }
+        Cursor newest = heap.poll();
+        current = newest.command;
+        String key = current.getKey();
+        // 同一个key的旧版本全部跳过
+        while (!heap.isEmpty() && heap.peek().command.getKey().equals(key)) {
+            Cursor older = heap.poll();
+            if (older.advance()) {
+                heap.add(older);
+            }
+        }
+        if (newest.advance()) {
+            heap.add(newest);
+        }
+        return true;
+    }
+
+    public Command getCommand() {
+        return current;
+    }
+
+    /**
+     * 内存表快照，已经从fromKey开始并按key升序
+     */
+    public static Source of(final List<Command> commands) {
+        return new Source() {
+            private final Iterator<Command> it = commands.iterator();
+            private Command command;
+
+            @Override
+            public boolean next() {
+                command = it.hasNext() ? it.next() : null;
+                return command != null;
+            }
+
+            @Override
+            public Command getCommand() {
+                return command;
+            }
+        };
+    }
+
+    /**
+     * SSTable中不小于fromKey的记录，fromKey为null时从头开始
+     */
+    public static Source of(final SSTable table, final String fromKey) {
+        return new Source() {
+            private final SSTable.BlockIterator it = table.iterator(fromKey);
+            private Command command;
+
+            @Override
+            public boolean next() throws IOException {
+                while (it.next()) {
+                    command = CommandCodec.decode(it.getBytes());
+                    if (command == null) {
+                        throw new IOException("corrupt record in table " + table.getId() + " at " + it.getPos());
+                    }
+                    if (fromKey == null || command.getKey().compareTo(fromKey) >= 0) {
+                        return true;
+                    }
+                }
+                command = null;
+                return false;
+            }
+
+            @Override
+            public Command getCommand() {
+                return command;
+            }
+        };
+    }
+
+    /**
+     * 归并游标，key相同时来源更新的排在前面
+     */
+    private static class Cursor implements Comparable<Cursor> {
+        private final Source source;
+        private final int rank;
+        private Command command;
+
+        Cursor(Source source, int rank) {
+            this.source = source;
+            this.rank = rank;
+        }
+
+        boolean advance() throws IOException {
+            if (!source.next()) {
+                return false;
+            }
+            command = source.getCommand();
+            return true;
+        }
+
+        @Override
+        public int compareTo(Cursor o) {
+            int cmp = command.getKey().compareTo(o.command.getKey());
+            if (cmp != 0) {
+                return cmp;
+            }
+            return Integer.compare(rank, o.rank);
+        }
+    }
+}
@@ -0,0 +1,647 @@
+/*
+ *@Type SSTable.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/16 14:05
+ * @version
+ */
+package service.table;
+
+import service.cache.BlockCache;
+import service.compress.BlockCodec;
+import service.compress.BlockCodecs;
+import utils.CommandCodec;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 不可变的有序表文件，由内存表刷盘或合并生成
+ * <pre>
+ * [数据块]...  每条记录：int长度 + 命令内容，块内和块间都按key有序，整块按块索引里的算法压缩
+ * [块索引]     int块数 + (int key长度, key, long块偏移, int块长度,
+ *                         long未压缩偏移, int未压缩长度, byte压缩算法)...
+ * [布隆过滤器] 见BloomFilter
+ * [footer]     long过滤器偏移, int过滤器长度,
+ *              long块索引偏移, int块索引长度, int记录数, int最小覆盖编号, int最大覆盖编号, long魔数
+ * </pre>
+ * 记录的位置（索引和提示文件里的pos）都是未压缩数据里的逻辑偏移量，读时先找到所在的块再解压。
+ * 旧版本的表按魔数区分：V2的块索引没有后三项、数据不压缩，V1还没有布隆过滤器，footer少前两项。
+ * 刷盘生成的表只覆盖自己的编号；合并生成的表覆盖[minId, maxId]内所有输入表，
+ * 数据的新旧按maxId比较而不是按文件编号。
+ * 表是不可变的，打开后数据区按1GB一段只读映射到内存，读不压缩的记录时直接返回映射区上的视图，
+ * 压缩的块解压后放进BlockCache
+ */
+public class SSTable implements Closeable {
+
+    public static final String SUFFIX = ".sst";
+    public static final String R_MODE = "r";
+    public static final long MAGIC = 0x65617379_64625353L;
+    public static final long MAGIC_V2 = 0x65617379_64625332L;
+    public static final long MAGIC_V3 = 0x65617379_64625333L;
+    public static final int FOOTER_SIZE = 8 + 4 + 4 + 4 + 4 + 8;
+    public static final int FOOTER_V2_SIZE = 8 + 4 + FOOTER_SIZE;
+
+    /**
+     * 单个映射段的大小，MappedByteBuffer最大只能映射2GB
+     */
+    private static final long REGION_SIZE = 1L << 30;
+
+    /**
+     * 表编号，越大越新
+     */
+    private final int id;
+
+    private final String filePath;
+
+    private final long fileSize;
+
+    private final long dataSize;
+
+    private final int recordCount;
+
+    /**
+     * 覆盖的表编号范围
+     */
+    private final int minId;
+
+    private final int maxId;
+
+    /**
+     * 稀疏块索引：每个数据块的首个key和位置
+     */
+    private final String[] blockKeys;
+
+    private final long[] blockOffsets;
+
+    private final int[] blockLens;
+
+    /**
+     * 每个块在未压缩数据里的偏移量和长度，不压缩的块和文件里的一致
+     */
+    private final long[] blockRawOffsets;
+
+    private final int[] blockRawLens;
+
+    /**
+     * 每个块的压缩算法编号，BlockCodecs.NONE表示按原样存
+     */
+    private final byte[] blockCodecs;
+
+    /**
+     * 是否有压缩的块，没有时按文件偏移量直接读
+     */
+    private final boolean compressed;
+
+    /**
+     * 未压缩的数据总字节数
+     */
+    private final long rawDataSize;
+
+    /**
+     * 解压后的块缓存，为null时每次都解压
+     */
+    private final BlockCache blockCache;
+
+    /**
+     * 布隆过滤器，旧版本的表为null
+     */
+    private final BloomFilter bloom;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    /**
+     * 数据区的只读映射，第i段从i * REGION_SIZE开始；为null时退回到FileChannel的positional read
+     */
+    private final MappedByteBuffer[] regions;
+
+    private SSTable(int id, String filePath, long fileSize, long dataSize, int recordCount, int minId, int maxId,
+                    String[] blockKeys, long[] blockOffsets, int[] blockLens,
+                    long[] blockRawOffsets, int[] blockRawLens, byte[] blockCodecs,
+                    BloomFilter bloom, BlockCache blockCache, RandomAccessFile file, MappedByteBuffer[] regions) {
+        this.id = id;
+        this.filePath = filePath;
+        this.fileSize = fileSize;
+        this.dataSize = dataSize;
+        this.recordCount = recordCount;
+        this.minId = minId;
+        this.maxId = maxId;
+        this.blockKeys = blockKeys;
+        this.blockOffsets = blockOffsets;
+        this.blockLens = blockLens;
+        this.blockRawOffsets = blockRawOffsets;
+        this.blockRawLens = blockRawLens;
+        this.blockCodecs = blockCodecs;
+        boolean anyCompressed = false;
+        long raw = 0;
+        for (int i = 0; i < blockCodecs.length; i++) {
+            anyCompressed |= blockCodecs[i] != BlockCodecs.NONE;
+            raw += blockRawLens[i];
+        }
+        this.compressed = anyCompressed;
+        this.rawDataSize = raw;
+        this.blockCache = blockCache;
+        this.bloom = bloom;
+        this.file = file;
+        this.channel = file.getChannel();
+        this.regions = regions;
+    }
+
+    public static String genFilePath(String dataDir, String name, int id) {
+        return dataDir + File.separator + String.format("%s_%06d%s", name, id, SUFFIX);
+    }
+
+    public static SSTable open(int id, String filePath, boolean mmap) throws IOException {
+        return open(id, filePath, mmap, null);
+    }
+
+    /**
+     * 打开表文件，加载footer、块索引和布隆过滤器，mmap为true时映射数据区，
+     * 压缩的块解压后放进blockCache（可以为null）
+     */
+    public static SSTable open(int id, String filePath, boolean mmap, BlockCache blockCache) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filePath, R_MODE);
+        boolean ok = false;
+        try {
+            long fileSize = file.length();
+            if (fileSize < FOOTER_SIZE) {
+                throw new IOException("broken sstable: " + filePath);
+            }
+            file.seek(fileSize - 8);
+            long magic = file.readLong();
+            BloomFilter bloom = null;
+            if (magic == MAGIC_V2 || magic == MAGIC_V3) {
+                if (fileSize < FOOTER_V2_SIZE) {
+                    throw new IOException("broken sstable: " + filePath);
+                }
+                file.seek(fileSize - FOOTER_V2_SIZE);
+                long bloomOffset = file.readLong();
+                int bloomLen = file.readInt();
+                byte[] bytes = new byte[bloomLen];
+                long footerPos = file.getFilePointer();
+                file.seek(bloomOffset);
+                file.readFully(bytes);
+                bloom = BloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+                file.seek(footerPos);
+            } else if (magic == MAGIC) {
+                file.seek(fileSize - FOOTER_SIZE);
+            } else {
+                throw new IOException("bad sstable magic: " + filePath);
+            }
+            long indexOffset = file.readLong();
+            int indexLen = file.readInt();
+            int recordCount = file.readInt();
+            int minId = file.readInt();
+            int maxId = file.readInt();
+            file.seek(indexOffset);
+            int blockCount = file.readInt();
+            String[] keys = new String[blockCount];
+            long[] offsets = new long[blockCount];
+            int[] lens = new int[blockCount];
+            long[] rawOffsets = offsets;
+            int[] rawLens = lens;
+            byte[] codecs = new byte[blockCount];
+            if (magic == MAGIC_V3) {
+                rawOffsets = new long[blockCount];
+                rawLens = new int[blockCount];
+            }
+            // 块索引可能有几千项，整段读进来再解析
+            byte[] indexBytes = new byte[indexLen];
+            file.readFully(indexBytes, 0, indexLen - 4);
+            DataInputStream index = new DataInputStream(new ByteArrayInputStream(indexBytes));
+            for (int i = 0; i < blockCount; i++) {
+                byte[] key = new byte[index.readInt()];
+                index.readFully(key);
+                keys[i] = new String(key, StandardCharsets.UTF_8);
+                offsets[i] = index.readLong();
+                lens[i] = index.readInt();
+                if (magic == MAGIC_V3) {
+                    rawOffsets[i] = index.readLong();
+                    rawLens[i] = index.readInt();
+                    codecs[i] = index.readByte();
+                    // 提前确认编号能找到实现
+                    BlockCodecs.byId(codecs[i]);
+                }
+            }
+            MappedByteBuffer[] regions = null;
+            if (mmap && indexOffset > 0) {
+                regions = new MappedByteBuffer[(int) ((indexOffset + REGION_SIZE - 1) / REGION_SIZE)];
+                for (int i = 0; i < regions.length; i++) {
+                    long start = i * REGION_SIZE;
+                    regions[i] = file.getChannel().map(FileChannel.MapMode.READ_ONLY, start,
+                            Math.min(REGION_SIZE, indexOffset - start));
+                }
+            }
+            SSTable table = new SSTable(id, filePath, fileSize, indexOffset, recordCount, minId, maxId,
+                    keys, offsets, lens, rawOffsets, rawLens, codecs, bloom, blockCache, file, regions);
+            ok = true;
+            return table;
+        } finally {
+            if (!ok) {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * 按逻辑偏移量取一条记录的内容。不压缩的表直接按文件偏移量读；
+     * 压缩的表先找到记录所在的块，返回解压后的块上的视图
+     */
+    public ByteBuffer slice(long pos, int len) throws IOException {
+        if (!compressed) {
+            return readStored(pos, len);
+        }
+        int block = blockOf(pos);
+        if (pos + len > blockRawOffsets[block] + blockRawLens[block]) {
+            throw new IOException("record at " + pos + " crosses block boundary in " + filePath);
+        }
+        ByteBuffer view = readBlock(block, true);
+        int offset = (int) (pos - blockRawOffsets[block]);
+        view.limit(offset + len).position(offset);
+        return view.slice();
+    }
+
+    /**
+     * 二分查找逻辑偏移量pos所在的块
+     */
+    private int blockOf(long pos) {
+        int lo = 0;
+        int hi = blockRawOffsets.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (blockRawOffsets[mid] <= pos) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 取第block块未压缩的内容。不压缩的块直接取文件里的数据；
+     * 压缩的块先查缓存，没有时读出解压，cache为true时放进缓存（顺序扫描不放，避免挤掉热点块）
+     */
+    public ByteBuffer readBlock(int block, boolean cache) throws IOException {
+        byte codecId = blockCodecs[block];
+        if (codecId == BlockCodecs.NONE) {
+            return readStored(blockOffsets[block], blockLens[block]);
+        }
+        if (blockCache != null) {
+            byte[] cached = blockCache.get(id, block);
+            if (cached != null) {
+                return ByteBuffer.wrap(cached);
+            }
+        }
+        ByteBuffer stored = readStored(blockOffsets[block], blockLens[block]);
+        byte[] src;
+        int srcOff;
+        if (stored.hasArray()) {
+            src = stored.array();
+            srcOff = stored.arrayOffset() + stored.position();
+        } else {
+            src = new byte[stored.remaining()];
+            stored.get(src);
+            srcOff = 0;
+        }
+        byte[] raw = new byte[blockRawLens[block]];
+        BlockCodec codec = BlockCodecs.byId(codecId);
+        codec.decompress(src, srcOff, blockLens[block], raw, 0, raw.length);
+        if (cache && blockCache != null) {
+            blockCache.put(id, block, raw);
+        }
+        return ByteBuffer.wrap(raw);
+    }
+
+    /**
+     * 按文件偏移量取数据。映射的表返回映射区上的只读视图，不拷贝（跨两段的除外）；
+     * 否则用positional read读到新的缓冲区，不移动文件指针，多线程可并发调用
+     */
+    private ByteBuffer readStored(long pos, int len) throws IOException {
+        if (regions != null) {
+            int region = (int) (pos / REGION_SIZE);
+            int offset = (int) (pos % REGION_SIZE);
+            if (offset + len <= regions[region].capacity()) {
+                ByteBuffer view = regions[region].duplicate();
+                view.limit(offset + len).position(offset);
+                return view.slice();
+            }
+            // 记录跨越了映射段边界，拼到新的缓冲区
+            ByteBuffer buffer = ByteBuffer.allocate(len);
+            while (buffer.hasRemaining()) {
+                ByteBuffer view = regions[region++].duplicate();
+                view.position(offset);
+                view.limit(Math.min(view.capacity(), offset + buffer.remaining()));
+                buffer.put(view);
+                offset = 0;
+            }
+            buffer.flip();
+            return buffer;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(len);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pos + buffer.position()) < 0) {
+                throw new EOFException("read beyond sstable " + filePath);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * key可能在这个表里时返回true；返回false时一定不在，不用读盘。没有过滤器的旧表总是返回true
+     */
+    public boolean mightContain(long keyHash) {
+        return bloom == null || bloom.mightContain(keyHash);
+    }
+
+    /**
+     * 不经过索引按key查找：二分块索引定位数据块，读出整块逐条比较key。
+     * 返回记录视图（可能是删除标记），表里没有这个key时返回null
+     */
+    public ByteBuffer find(String key, byte[] keyBytes) throws IOException {
+        if (blockKeys.length == 0 || blockKeys[0].compareTo(key) > 0) {
+            return null;
+        }
+        int block = findBlock(key);
+        ByteBuffer buffer = readBlock(block, true);
+        while (buffer.hasRemaining()) {
+            int len = buffer.getInt();
+            if (len <= 0 || len > buffer.remaining()) {
+                throw new IOException("corrupt block in sstable " + filePath + " at " + blockRawOffsets[block]);
+            }
+            int start = buffer.position();
+            ByteBuffer record = buffer.duplicate();
+            record.limit(start + len);
+            if (CommandCodec.keyEquals(record, keyBytes)) {
+                return record.slice();
+            }
+            buffer.position(start + len);
+        }
+        return null;
+    }
+
+    /**
+     * 顺序遍历所有记录
+     */
+    public void forEach(RecordConsumer consumer) throws IOException {
+        try (RecordIterator it = iterator()) {
+            while (it.next()) {
+                consumer.accept(it.getPos(), it.getBytes());
+            }
+        }
+    }
+
+    public RecordIterator iterator() throws IOException {
+        return new RecordIterator();
+    }
+
+    /**
+     * 从包含fromKey的数据块开始按块读取记录，fromKey为null时从头开始。
+     * 返回的前几条记录可能小于fromKey，由调用方跳过
+     */
+    public BlockIterator iterator(String fromKey) {
+        return new BlockIterator(fromKey == null ? 0 : findBlock(fromKey));
+    }
+
+    /**
+     * 二分查找首个key不大于key的块，key比所有块都小时返回0
+     */
+    private int findBlock(String key) {
+        int lo = 0;
+        int hi = blockKeys.length - 1;
+        int found = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blockKeys[mid].compareTo(key) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 是否覆盖了编号为otherId的表（合并后旧表被取代）
+     */
+    public boolean covers(int otherId) {
+        return otherId != id && otherId >= minId && otherId <= maxId;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public int getMinId() {
+        return minId;
+    }
+
+    public int getMaxId() {
+        return maxId;
+    }
+
+    public int getBlockCount() {
+        return blockKeys.length;
+    }
+
+    public boolean isMapped() {
+        return regions != null;
+    }
+
+    /**
+     * 数据区在文件里的字节数（压缩后）
+     */
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    /**
+     * 数据区未压缩的字节数
+     */
+    public long getRawDataSize() {
+        return rawDataSize;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public boolean hasBloomFilter() {
+        return bloom != null;
+    }
+
+    /**
+     * 布隆过滤器占用的内存字节数
+     */
+    public long getBloomBytes() {
+        return bloom == null ? 0 : bloom.byteSize();
+    }
+
+    /**
+     * 映射区在缓冲区被回收时才释放，关闭后已经拿到的视图仍然可读
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    public interface RecordConsumer {
+        void accept(long pos, byte[] bytes) throws IOException;
+    }
+
+    /**
+     * 顺序读取记录的迭代器
+     */
+    public class RecordIterator implements Closeable {
+        private final DataInputStream in;
+        private int block;
+        private ByteBuffer buffer;
+        private long pos;
+        private byte[] bytes;
+
+        private RecordIterator() throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath), 64 * 1024));
+        }
+
+        /**
+         * 数据块在文件里是连续的，按顺序整块读出，压缩的块解压后再逐条取，不经过块缓存
+         */
+        public boolean next() throws IOException {
+            while (buffer == null || !buffer.hasRemaining()) {
+                if (block >= blockKeys.length) {
+                    bytes = null;
+                    return false;
+                }
+                byte[] stored = new byte[blockLens[block]];
+                try {
+                    in.readFully(stored);
+                } catch (EOFException e) {
+                    throw new IOException("truncated sstable: " + filePath, e);
+                }
+                BlockCodec codec = BlockCodecs.byId(blockCodecs[block]);
+                if (codec == null) {
+                    buffer = ByteBuffer.wrap(stored);
+                } else {
+                    byte[] raw = new byte[blockRawLens[block]];
+                    codec.decompress(stored, 0, stored.length, raw, 0, raw.length);
+                    buffer = ByteBuffer.wrap(raw);
+                }
+                block++;
+            }
+            int len = buffer.getInt();
+            if (len <= 0 || len > buffer.remaining()) {
+                throw new IOException("corrupt block in sstable " + filePath + " at " + blockRawOffsets[block - 1]);
+            }
+            pos = blockRawOffsets[block - 1] + buffer.position();
+            bytes = new byte[len];
+            buffer.get(bytes);
+            return true;
+        }
+
+        public long getPos() {
+            return pos;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public SSTable getTable() {
+            return SSTable.this;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * 按块读取记录的迭代器，每次用readBlock取一整块，映射且不压缩的表不拷贝
+     */
+    public class BlockIterator {
+        private int block;
+        private ByteBuffer buffer;
+        private long blockOffset;
+        private long pos;
+        private byte[] bytes;
+
+        private BlockIterator(int block) {
+            this.block = block;
+        }
+
+        public boolean next() throws IOException {
+            while (buffer == null || !buffer.hasRemaining()) {
+                if (block >= blockKeys.length) {
+                    bytes = null;
+                    return false;
+                }
+                blockOffset = blockRawOffsets[block];
+                buffer = readBlock(block, true);
+                block++;
+            }
+            int len = buffer.getInt();
+            if (len <= 0 || len > buffer.remaining()) {
+                throw new IOException("corrupt block in sstable " + filePath + " at " + blockOffset);
+            }
+            pos = blockOffset + buffer.position();
+            bytes = new byte[len];
+            buffer.get(bytes);
+            return true;
+        }
+
+        public long getPos() {
+            return pos;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public SSTable getTable() {
+            return SSTable.this;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SSTable{" +
+                "id=" + id +
+                ", minId=" + minId +
+                ", maxId=" + maxId +
+                ", fileSize=" + fileSize +
+                ", recordCount=" + recordCount +
+                ", blocks=" + blockKeys.length +
+                ", dataSize=" + dataSize +
+                ", rawDataSize=" + rawDataSize +
+                ", bloomBytes=" + getBloomBytes() +
+                '}';
+    }
+}
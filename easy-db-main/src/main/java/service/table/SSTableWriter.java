@@ -0,0 +1,217 @@
+/*
+ *@Type SSTableWriter.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/16 14:20
+ * @version
+ */
+package service.table;
+
+import service.compress.BlockCodec;
+import service.compress.BlockCodecs;
+import utils.CommandCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按key有序写入SSTable：数据块 + 块索引 + 布隆过滤器 + footer，同时生成对应的提示文件。
+ * 每个数据块先在内存里攒满，写出时用codec压缩，压缩后不更小的块按原样存
+ */
+public class SSTableWriter implements Closeable {
+
+    private final FileOutputStream fileOut;
+
+    private final DataOutputStream out;
+
+    private final int blockSize;
+
+    /**
+     * 压缩算法，为null时不压缩
+     */
+    private final BlockCodec codec;
+
+    /**
+     * 当前写入位置（未压缩的逻辑偏移量），记录的位置都按它算
+     */
+    private long offset;
+
+    /**
+     * 已写入文件的字节数
+     */
+    private long fileOffset;
+
+    private long blockStart;
+
+    private int recordCount;
+
+    /**
+     * 正在攒的数据块
+     */
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+
+    private final DataOutputStream blockOut = new DataOutputStream(block);
+
+    private final List<String> blockKeys = new ArrayList<>();
+
+    private final List<Long> blockOffsets = new ArrayList<>();
+
+    private final List<Integer> blockLens = new ArrayList<>();
+
+    private final List<Long> blockRawOffsets = new ArrayList<>();
+
+    private final List<Integer> blockRawLens = new ArrayList<>();
+
+    private final List<Byte> blockCodecs = new ArrayList<>();
+
+    private String lastKey;
+
+    private boolean finished;
+
+    /**
+     * 覆盖的表编号范围，写进footer
+     */
+    private final int minId;
+
+    private final int maxId;
+
+    private final HintFile.Writer hintWriter;
+
+    /**
+     * 布隆过滤器的目标误判率
+     */
+    private final double bloomFalsePositiveRate;
+
+    /**
+     * 已写入key的哈希，写完时据此生成布隆过滤器
+     */
+    private long[] keyHashes = new long[1024];
+
+    public SSTableWriter(String filePath, String hintPath, int blockSize, int minId, int maxId,
+                         double bloomFalsePositiveRate, BlockCodec codec) throws IOException {
+        this.hintWriter = new HintFile.Writer(hintPath);
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.codec = codec;
+        this.fileOut = new FileOutputStream(filePath);
+        this.out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+        this.blockSize = blockSize;
+        this.minId = minId;
+        this.maxId = maxId;
+    }
+
+    /**
+     * 追加一条记录，key必须严格递增，返回记录内容的偏移量
+     */
+    public long append(String key, byte[] bytes, boolean tombstone) throws IOException {
+        if (lastKey != null && lastKey.compareTo(key) >= 0) {
+            throw new IllegalArgumentException("keys must be appended in order: " + lastKey + " >= " + key);
+        }
+        if (blockKeys.isEmpty() || offset - blockStart >= blockSize) {
+            startBlock(key);
+        }
+        blockOut.writeInt(bytes.length);
+        blockOut.write(bytes);
+        long pos = offset + 4;
+        hintWriter.add(key, pos, bytes.length, tombstone, tombstone ? 0 : CommandCodec.expireAt(bytes));
+        if (recordCount == keyHashes.length) {
+            keyHashes = Arrays.copyOf(keyHashes, recordCount * 2);
+        }
+        // 删除标记也要放进过滤器，查询时才能在这个表上停下
+        keyHashes[recordCount] = BloomFilter.hash(key);
+        offset += 4 + bytes.length;
+        recordCount++;
+        lastKey = key;
+        return pos;
+    }
+
+    private void startBlock(String firstKey) throws IOException {
+        if (!blockKeys.isEmpty()) {
+            writeBlock();
+        }
+        blockStart = offset;
+        blockKeys.add(firstKey);
+        blockRawOffsets.add(offset);
+    }
+
+    /**
+     * 压缩并写出攒好的数据块
+     */
+    private void writeBlock() throws IOException {
+        byte[] raw = block.toByteArray();
+        byte[] compressed = codec == null ? null : codec.compress(raw, 0, raw.length);
+        byte[] stored = compressed == null ? raw : compressed;
+        out.write(stored);
+        blockOffsets.add(fileOffset);
+        blockLens.add(stored.length);
+        blockRawLens.add(raw.length);
+        blockCodecs.add(compressed == null ? BlockCodecs.NONE : codec.getId());
+        fileOffset += stored.length;
+        block.reset();
+    }
+
+    /**
+     * 写入块索引、布隆过滤器和footer并刷盘，表写完后再写提示文件
+     */
+    public void finish() throws IOException {
+        if (!blockKeys.isEmpty()) {
+            writeBlock();
+        }
+        long indexOffset = fileOffset;
+        out.writeInt(blockKeys.size());
+        long indexLen = 4;
+        for (int i = 0; i < blockKeys.size(); i++) {
+            byte[] key = blockKeys.get(i).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeLong(blockOffsets.get(i));
+            out.writeInt(blockLens.get(i));
+            out.writeLong(blockRawOffsets.get(i));
+            out.writeInt(blockRawLens.get(i));
+            out.writeByte(blockCodecs.get(i));
+            indexLen += 4 + key.length + 8 + 4 + 8 + 4 + 1;
+        }
+        long bloomOffset = indexOffset + indexLen;
+        BloomFilter bloom = BloomFilter.create(keyHashes, recordCount, bloomFalsePositiveRate);
+        bloom.writeTo(out);
+        out.writeLong(bloomOffset);
+        out.writeInt(bloom.byteSize());
+        out.writeLong(indexOffset);
+        out.writeInt((int) indexLen);
+        out.writeInt(recordCount);
+        out.writeInt(minId);
+        out.writeInt(maxId);
+        out.writeLong(SSTable.MAGIC_V3);
+        out.flush();
+        fileOut.getFD().sync();
+        hintWriter.finish();
+        finished = true;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * 已写入记录的未压缩字节数
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            out.flush();
+        }
+        out.close();
+        hintWriter.close();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *@Type TableMerger.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/17 10:30
+ * @version
+ */
+package service.table;
+
+import model.command.Command;
+import model.command.CommandPos;
+import model.command.RmCommand;
+import model.command.SetCommand;
+import service.compress.BlockCodec;
+import utils.CommandCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 多路归并若干SSTable，每个key只保留最新的一条记录。
+ * 输入必须包含所有更旧的表，因此删除标记和已过期的记录可以直接丢弃
+ */
+public class TableMerger {
+
+    private final List<SSTable> inputs;
+
+    private final int blockSize;
+
+    private final double bloomFalsePositiveRate;
+
+    private final BlockCodec codec;
+
+    private final BooleanSupplier aborted;
+
+    /**
+     * 归并结果：keys[i]在新表中的位置是positions[i]，为null表示该key已被删除
+     */
+    private final List<String> keys = new ArrayList<>();
+
+    private final List<CommandPos> positions = new ArrayList<>();
+
+    /**
+     * 因过期被丢弃的记录数
+     */
+    private int expired;
+
+    public TableMerger(List<SSTable> inputs, int blockSize, double bloomFalsePositiveRate, BlockCodec codec,
+                       BooleanSupplier aborted) {
+        this.inputs = inputs;
+        this.blockSize = blockSize;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.codec = codec;
+        this.aborted = aborted;
+    }
+
+    /**
+     * 归并写出到outPath，所有记录都被删除时不生成文件并返回false
+     */
+    public boolean merge(int outId, String outPath, String hintPath) throws IOException {
+        int minId = Integer.MAX_VALUE;
+        int maxId = Integer.MIN_VALUE;
+        for (SSTable table : inputs) {
+            minId = Math.min(minId, table.getMinId());
+            maxId = Math.max(maxId, table.getMaxId());
+        }
+        // 以开始时刻判断过期，之后才过期的留给下次合并
+        long now = System.currentTimeMillis();
+        PriorityQueue<Cursor> heap = new PriorityQueue<>();
+        File tmp = new File(outPath + ".tmp");
+        boolean done = false;
+        try (SSTableWriter writer = new SSTableWriter(tmp.getPath(), hintPath, blockSize, minId, maxId,
+                bloomFalsePositiveRate, codec)) {
+            for (SSTable table : inputs) {
+                Cursor cursor = new Cursor(table.iterator());
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+            while (!heap.isEmpty()) {
+                if (aborted.getAsBoolean()) {
+                    throw new IOException("compaction aborted");
+                }
+                Cursor newest = heap.poll();
+                String key = newest.key;
+                // 同一个key的旧版本全部跳过
+                while (!heap.isEmpty() && heap.peek().key.equals(key)) {
+                    Cursor older = heap.poll();
+                    if (older.advance()) {
+                        heap.add(older);
+                    } else {
+                        older.close();
+                    }
+                }
+                keys.add(key);
+                if (newest.command instanceof RmCommand) {
+                    positions.add(null);
+                } else if (((SetCommand) newest.command).expiredAt(now)) {
+                    positions.add(null);
+                    expired++;
+                } else {
+                    byte[] bytes = newest.it.getBytes();
+                    long pos = writer.append(key, bytes, false);
+                    positions.add(new CommandPos(outId, pos, bytes.length));
+                }
+                if (newest.advance()) {
+                    heap.add(newest);
+                } else {
+                    newest.close();
+                }
+            }
+            writer.finish();
+            done = writer.getRecordCount() > 0;
+        } finally {
+            for (Cursor cursor : heap) {
+                cursor.close();
+            }
+            if (!done) {
+                tmp.delete();
+            }
+        }
+        if (!done) {
+            new File(hintPath).delete();
+            return false;
+        }
+        if (!tmp.renameTo(new File(outPath))) {
+            throw new IOException("rename " + tmp + " failed");
+        }
+        return true;
+    }
+
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public List<CommandPos> getPositions() {
+        return positions;
+    }
+
+    public int getExpired() {
+        return expired;
+    }
+
+    /**
+     * 归并游标，key相同时覆盖范围更新的表排在前面
+     */
+    private static class Cursor implements Comparable<Cursor> {
+        private final SSTable.RecordIterator it;
+        private String key;
+        private Command command;
+
+        Cursor(SSTable.RecordIterator it) {
+            this.it = it;
+        }
+
+        boolean advance() throws IOException {
+            if (!it.next()) {
+                return false;
+            }
+            command = CommandCodec.decode(it.getBytes());
+            if (command == null) {
+                throw new IOException("corrupt record in table " + it.getTable().getId() + " at " + it.getPos());
+            }
+            key = command.getKey();
+            return true;
+        }
+
+        void close() throws IOException {
+            it.close();
+        }
+
+        @Override
+        public int compareTo(Cursor o) {
+            int cmp = key.compareTo(o.key);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return Integer.compare(o.it.getTable().getMaxId(), it.getTable().getMaxId());
+        }
+    }
+}
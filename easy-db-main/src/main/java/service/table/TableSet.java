@@ -0,0 +1,80 @@
+/*
+ *@Type TableSet.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/29 16:30
+ * @version
+ */
+package service.table;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 某一时刻的SSTable集合，不可变。增删表时复制出新的集合整体替换，
+ * 读线程拿到的总是完整的一组表，不会看到合并时删了一半的输入
+ */
+public final class TableSet {
+
+    public static final TableSet EMPTY = new TableSet(Collections.<Integer, SSTable>emptyMap());
+
+    private final Map<Integer, SSTable> byId;
+
+    /**
+     * 按maxId从大到小，maxId相同时合并生成的新表（编号大）在前
+     */
+    private final SSTable[] newestFirst;
+
+    private TableSet(Map<Integer, SSTable> byId) {
+        this.byId = byId;
+        this.newestFirst = byId.values().toArray(new SSTable[0]);
+        java.util.Arrays.sort(newestFirst,
+                Comparator.comparingInt(SSTable::getMaxId).thenComparingInt(SSTable::getId).reversed());
+    }
+
+    public SSTable get(int id) {
+        return byId.get(id);
+    }
+
+    public boolean contains(int id) {
+        return byId.containsKey(id);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public Collection<SSTable> all() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    /**
+     * 从新到旧的顺序，调用方不能修改返回的数组
+     */
+    public SSTable[] newestFirst() {
+        return newestFirst;
+    }
+
+    /**
+     * 加入一个表
+     */
+    public TableSet with(SSTable table) {
+        Map<Integer, SSTable> copy = new HashMap<>(byId);
+        copy.put(table.getId(), table);
+        return new TableSet(copy);
+    }
+
+    /**
+     * 移除一组表
+     */
+    public TableSet without(Collection<SSTable> tables) {
+        Map<Integer, SSTable> copy = new HashMap<>(byId);
+        for (SSTable table : tables) {
+            copy.remove(table.getId());
+        }
+        return new TableSet(copy);
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ *@Type GroupCommitLog.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/15 09:40
+ * @version
+ */
+package service.wal;
+
+import model.command.Command;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import service.FsyncTypeEnum;
+import service.StoreConfig;
+import utils.CommandCodec;
+import utils.LoggerUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 组提交的预写日志：写线程只负责把编码好的记录放进队列并等待，
+ * 由唯一的刷盘线程把队列里积攒的记录合并成一次write和一次fsync，再统一唤醒。
+ * <pre>
+ * 单条记录：int 记录长度 | 记录
+ * 批量记录：int BATCH_MAGIC | int 条数 | int 批体长度 | int 批体CRC32 | 批体（若干条 int 记录长度 | 记录）
+ * </pre>
+ * 一次appendAll的多条记录写成一条批量记录，回放时CRC不对或不完整就整批丢弃。
+ */
+public class GroupCommitLog implements Closeable {
+
+    public static final String RW_MODE = "rw";
+    private final Logger LOGGER = LoggerFactory.getLogger(GroupCommitLog.class);
+    private final String logFormat = "[GroupCommitLog][{}]: {}";
+
+    /**
+     * 关闭时放入队列的哨兵
+     */
+    private static final Append POISON = new Append(Collections.<LogEntry>emptyList());
+
+    /**
+     * 批量记录的起始标记，是个负数，不会和单条记录的长度混淆
+     */
+    private static final int BATCH_MAGIC = 0xEDB0BA7C;
+    private static final int BATCH_HEADER_SIZE = 4 + 4 + 4 + 4;
+
+    /**
+     * 每批写入完成后的回调，在刷盘线程内按写入顺序执行。
+     * atomic表示其中有批量记录，需要整体发布
+     */
+    public interface Listener {
+        void onFlushed(List<LogEntry> batch, boolean atomic);
+    }
+
+    private final StoreConfig config;
+
+    private final Listener listener;
+
+    private final BlockingQueue<Append> queue;
+
+    private final String filePath;
+
+    private RandomAccessFile file;
+
+    private FileChannel channel;
+
+    /**
+     * 下一条记录的追加位置，只由刷盘线程修改
+     */
+    private long writePos;
+
+    /**
+     * 复用的写缓冲
+     */
+    private ByteBuffer writeBuffer;
+
+    /**
+     * 自上次刷盘后是否有新的写入（INTERVAL策略）
+     */
+    private boolean dirty;
+
+    private long lastFsyncTime;
+
+    private volatile boolean closed;
+
+    private final Thread flusher;
+
+    private final LogStats stats = new LogStats();
+
+    public GroupCommitLog(String filePath, long writePos, StoreConfig config, Listener listener) throws IOException {
+        this.config = config;
+        this.listener = listener;
+        this.queue = new LinkedBlockingQueue<>();
+        this.filePath = filePath;
+        this.file = new RandomAccessFile(filePath, RW_MODE);
+        this.channel = file.getChannel();
+        this.writePos = writePos;
+        this.writeBuffer = ByteBuffer.allocateDirect(64 * 1024);
+        this.lastFsyncTime = System.currentTimeMillis();
+        this.flusher = new Thread(this::runFlusher, "easy-db-wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 追加一条记录，阻塞到该记录所在的批次写盘（并按策略刷盘）完成，返回记录的位置
+     */
+    public long append(Command command, byte[] bytes) {
+        LogEntry entry = new LogEntry(command, bytes);
+        await(new Append(Collections.singletonList(entry)));
+        return entry.pos;
+    }
+
+    /**
+     * 一次原子追加多条记录：写成一条批量记录，只入队一次、只等待一次
+     */
+    public void appendAll(List<Command> commands, List<byte[]> bytes) {
+        List<LogEntry> entries = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            entries.add(new LogEntry(commands.get(i), bytes.get(i)));
+        }
+        await(new Append(entries));
+    }
+
+    private void await(Append append) {
+        if (closed) {
+            throw new IllegalStateException("log is closed");
+        }
+        queue.add(append);
+        try {
+            append.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void runFlusher() {
+        List<Append> appends = new ArrayList<>();
+        List<LogEntry> batch = new ArrayList<>();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                Append first = pollFirst();
+                if (first == null) {
+                    fsyncIfDue();
+                    continue;
+                }
+                appends.add(first);
+                queue.drainTo(appends, config.getGroupCommitMaxBatch() - 1);
+                if (appends.remove(POISON)) {
+                    stop = true;
+                }
+                for (Append append : appends) {
+                    batch.addAll(append.entries);
+                }
+                if (!appends.isEmpty()) {
+                    flush(appends, batch);
+                }
+            } catch (InterruptedException e) {
+                stop = true;
+            } finally {
+                appends.clear();
+                batch.clear();
+            }
+        }
+        // 关闭过程中漏进来的记录直接失败
+        Append left;
+        while ((left = queue.poll()) != null) {
+            if (left != POISON) {
+                left.future.completeExceptionally(new IllegalStateException("log is closed"));
+            }
+        }
+    }
+
+    private Append pollFirst() throws InterruptedException {
+        if (config.getFsyncType() != FsyncTypeEnum.INTERVAL) {
+            return queue.take();
+        }
+        return queue.poll(config.getFsyncIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(List<Append> appends, List<LogEntry> batch) {
+        try {
+            boolean atomic = false;
+            int total = 0;
+            for (Append append : appends) {
+                if (append.entries.size() > 1) {
+                    atomic = true;
+                    total += BATCH_HEADER_SIZE;
+                }
+                for (LogEntry entry : append.entries) {
+                    total += 4 + entry.bytes.length;
+                }
+            }
+            ByteBuffer buffer = prepareBuffer(total);
+            for (Append append : appends) {
+                if (append.entries.size() > 1) {
+                    putBatch(buffer, append.entries);
+                } else {
+                    putEntry(buffer, append.entries.get(0));
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, writePos + buffer.position());
+            }
+            writePos += total;
+            stats.groupCommit(batch.size(), total);
+            if (config.getFsyncType() == FsyncTypeEnum.ALWAYS) {
+                force();
+            } else {
+                dirty = true;
+                fsyncIfDue();
+            }
+            listener.onFlushed(batch, atomic);
+            for (Append append : appends) {
+                append.future.complete(null);
+            }
+        } catch (Throwable t) {
+            LoggerUtil.error(LOGGER, t, logFormat, "flush", "group commit failed");
+            for (Append append : appends) {
+                append.future.completeExceptionally(t);
+            }
+        }
+    }
+
+    private void putEntry(ByteBuffer buffer, LogEntry entry) {
+        buffer.putInt(entry.bytes.length);
+        entry.pos = writePos + buffer.position();
+        buffer.put(entry.bytes);
+    }
+
+    private void putBatch(ByteBuffer buffer, List<LogEntry> entries) {
+        int start = buffer.position();
+        buffer.position(start + BATCH_HEADER_SIZE);
+        for (LogEntry entry : entries) {
+            putEntry(buffer, entry);
+        }
+        int bodyLen = buffer.position() - start - BATCH_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + BATCH_HEADER_SIZE);
+        body.limit(buffer.position());
+        crc.update(body);
+        buffer.putInt(start, BATCH_MAGIC);
+        buffer.putInt(start + 4, entries.size());
+        buffer.putInt(start + 8, bodyLen);
+        buffer.putInt(start + 12, (int) crc.getValue());
+    }
+
+    /**
+     * 从file的当前位置读下一条单条或批量记录，解码后放进out，available是文件剩余字节数。
+     * 返回读掉的字节数；记录不完整或校验失败（崩溃时写了一半的尾部）返回-1，此时out不变
+     */
+    public static int readNext(RandomAccessFile file, long available, List<Command> out) throws IOException {
+        if (available < 4) {
+            return -1;
+        }
+        int head = file.readInt();
+        if (head != BATCH_MAGIC) {
+            if (head <= 0 || available - 4 < head) {
+                return -1;
+            }
+            byte[] bytes = new byte[head];
+            file.readFully(bytes);
+            Command command = CommandCodec.decode(bytes);
+            if (command == null) {
+                return -1;
+            }
+            out.add(command);
+            return 4 + head;
+        }
+        if (available < BATCH_HEADER_SIZE) {
+            return -1;
+        }
+        int count = file.readInt();
+        int bodyLen = file.readInt();
+        int checksum = file.readInt();
+        if (count <= 0 || bodyLen <= 0 || available - BATCH_HEADER_SIZE < bodyLen) {
+            return -1;
+        }
+        byte[] body = new byte[bodyLen];
+        file.readFully(body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != checksum) {
+            return -1;
+        }
+        List<Command> commands = new ArrayList<>(count);
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < 4) {
+                return -1;
+            }
+            int len = buffer.getInt();
+            if (len <= 0 || buffer.remaining() < len) {
+                return -1;
+            }
+            byte[] bytes = new byte[len];
+            buffer.get(bytes);
+            Command command = CommandCodec.decode(bytes);
+            if (command == null) {
+                return -1;
+            }
+            commands.add(command);
+        }
+        out.addAll(commands);
+        return BATCH_HEADER_SIZE + bodyLen;
+    }
+
+    private ByteBuffer prepareBuffer(int size) {
+        if (writeBuffer.capacity() < size) {
+            int capacity = writeBuffer.capacity();
+            while (capacity < size) {
+                capacity <<= 1;
+            }
+            writeBuffer = ByteBuffer.allocateDirect(capacity);
+        }
+        writeBuffer.clear();
+        return writeBuffer;
+    }
+
+    private void fsyncIfDue() {
+        if (config.getFsyncType() != FsyncTypeEnum.INTERVAL || !dirty) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastFsyncTime < config.getFsyncIntervalMs()) {
+            return;
+        }
+        try {
+            force();
+            dirty = false;
+            lastFsyncTime = now;
+        } catch (IOException e) {
+            LoggerUtil.error(LOGGER, e, logFormat, "fsync", "interval fsync failed");
+        }
+    }
+
+    /**
+     * 把当前日志文件刷盘后改名为frozenPath，并在原路径上开始一个新的空日志。
+     * 只能在刷盘线程内（即Listener回调中）调用
+     */
+    public void roll(String frozenPath) throws IOException {
+        force();
+        file.close();
+        Files.move(Paths.get(filePath), Paths.get(frozenPath), StandardCopyOption.ATOMIC_MOVE);
+        this.file = new RandomAccessFile(filePath, RW_MODE);
+        this.channel = file.getChannel();
+        this.writePos = 0;
+        this.dirty = false;
+    }
+
+    private void force() throws IOException {
+        long start = System.nanoTime();
+        channel.force(false);
+        stats.getFsync().recordSince(start);
+    }
+
+    public long getWritePos() {
+        return writePos;
+    }
+
+    public LogStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 等待队列中已有的记录写完后关闭
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(POISON);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (config.getFsyncType() != FsyncTypeEnum.NEVER) {
+            channel.force(false);
+        }
+        file.close();
+    }
+
+    /**
+     * 一次append或appendAll，作为一个整体入队和唤醒
+     */
+    private static class Append {
+        private final List<LogEntry> entries;
+        private final CompletableFuture<Void> future;
+
+        Append(List<LogEntry> entries) {
+            this.entries = entries;
+            this.future = new CompletableFuture<>();
+        }
+    }
+
+    public static class LogEntry {
+        private final Command command;
+        private final byte[] bytes;
+        private long pos;
+
+        LogEntry(Command command, byte[] bytes) {
+            this.command = command;
+            this.bytes = bytes;
+        }
+
+        public Command getCommand() {
+            return command;
+        }
+
+        public int getLen() {
+            return bytes.length;
+        }
+
+        public long getPos() {
+            return pos;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *@Type LogStats.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/28 09:50
+ * @version
+ */
+package service.wal;
+
+import utils.ConcurrentHistogram;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 预写日志的累计指标，都由刷盘线程记录
+ */
+public class LogStats {
+    /**
+     * 写入的记录条数，批量记录按其中的条数算
+     */
+    private final LongAdder records = new LongAdder();
+
+    /**
+     * 组提交次数，即合并后的write次数
+     */
+    private final LongAdder groupCommits = new LongAdder();
+
+    /**
+     * 追加到日志文件的字节数
+     */
+    private final LongAdder appendedBytes = new LongAdder();
+
+    /**
+     * 每次fsync的耗时（纳秒）
+     */
+    private final ConcurrentHistogram fsync = new ConcurrentHistogram();
+
+    void groupCommit(int recordCount, long bytes) {
+        records.add(recordCount);
+        groupCommits.increment();
+        appendedBytes.add(bytes);
+    }
+
+    ConcurrentHistogram getFsync() {
+        return fsync;
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    public long getGroupCommits() {
+        return groupCommits.sum();
+    }
+
+    public long getAppendedBytes() {
+        return appendedBytes.sum();
+    }
+
+    public long getFsyncs() {
+        return fsync.getCount();
+    }
+
+    public void putMetrics(String prefix, Map<String, Object> out) {
+        long commits = getGroupCommits();
+        out.put(prefix + "records", getRecords());
+        out.put(prefix + "groupCommits", commits);
+        out.put(prefix + "recordsPerCommit", commits == 0 ? 0 : Math.round(getRecords() * 10.0 / commits) / 10.0);
+        out.put(prefix + "appendedBytes", getAppendedBytes());
+        fsync.putMetrics(prefix + "fsync", out);
+    }
+
+    @Override
+    public String toString() {
+        return "LogStats{" +
+                "records=" + records +
+                ", groupCommits=" + groupCommits +
+                ", appendedBytes=" + appendedBytes +
+                ", fsyncs=" + getFsyncs() +
+                '}';
+    }
+}
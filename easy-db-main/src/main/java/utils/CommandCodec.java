@@ -0,0 +1,238 @@
+/*
+ *@Type CommandCodec.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/19 15:10
+ * @version
+ */
+package utils;
+
+import com.alibaba.fastjson.JSON;
+import model.command.Command;
+import model.command.RmCommand;
+import model.command.SetCommand;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * 命令的二进制编解码，取代落盘的fastjson格式
+ * <pre>
+ * byte 版本, byte 类型, int key长度, int value长度(-1表示没有), int CRC32, long 时间戳
+ * [long 过期时间，仅VERSION_2]
+ * key(UTF-8), value(UTF-8)
+ * </pre>
+ * CRC32覆盖除自身以外的头部和key、value。只有带过期时间的set用VERSION_2，其余记录格式不变。
+ * 旧版本的记录是JSON，首字节固定为'{'，解码时自动识别，所以老数据文件可以原地读取，
+ * 刷盘和合并时会被改写成新格式
+ */
+public class CommandCodec {
+
+    public static final byte VERSION_1 = 1;
+    public static final byte VERSION_2 = 2;
+    public static final byte LEGACY_JSON = '{';
+    public static final int HEADER_SIZE = 1 + 1 + 4 + 4 + 4 + 8;
+    public static final int HEADER_SIZE_V2 = HEADER_SIZE + 8;
+
+    private static final byte TYPE_SET = 0;
+    private static final byte TYPE_RM = 1;
+    private static final int CRC_OFFSET = 1 + 1 + 4 + 4;
+
+    public static byte[] encode(Command command) {
+        byte[] key = command.getKey().getBytes(StandardCharsets.UTF_8);
+        byte[] value = null;
+        byte type = TYPE_RM;
+        long expireAt = 0;
+        if (command instanceof SetCommand) {
+            type = TYPE_SET;
+            String v = ((SetCommand) command).getValue();
+            value = v == null ? null : v.getBytes(StandardCharsets.UTF_8);
+            expireAt = ((SetCommand) command).getExpireAt();
+        }
+        byte version = expireAt == 0 ? VERSION_1 : VERSION_2;
+        int valueLen = value == null ? -1 : value.length;
+        byte[] bytes = new byte[headerSize(version) + key.length + Math.max(valueLen, 0)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.put(version);
+        buffer.put(type);
+        buffer.putInt(key.length);
+        buffer.putInt(valueLen);
+        buffer.putInt(0);
+        buffer.putLong(command.getTimestamp());
+        if (version == VERSION_2) {
+            buffer.putLong(expireAt);
+        }
+        buffer.put(key);
+        if (value != null) {
+            buffer.put(value);
+        }
+        buffer.putInt(CRC_OFFSET, crc(bytes));
+        return bytes;
+    }
+
+    /**
+     * 解码一条记录，校验失败（如崩溃时写坏的尾部）返回null
+     */
+    public static Command decode(byte[] bytes) {
+        if (bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == LEGACY_JSON) {
+            return CommandUtil.jsonToCommand(JSON.parseObject(new String(bytes, StandardCharsets.UTF_8)));
+        }
+        if (!verify(bytes)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(2);
+        int keyLen = buffer.getInt();
+        int valueLen = buffer.getInt();
+        buffer.getInt();
+        long timestamp = buffer.getLong();
+        long expireAt = bytes[0] == VERSION_2 ? buffer.getLong() : 0;
+        int headerSize = headerSize(bytes[0]);
+        String key = new String(bytes, headerSize, keyLen, StandardCharsets.UTF_8);
+        if (bytes[1] == TYPE_SET) {
+            String value = valueLen < 0 ? null : new String(bytes, headerSize + keyLen, valueLen, StandardCharsets.UTF_8);
+            SetCommand command = new SetCommand(key, value, expireAt);
+            command.setTimestamp(timestamp);
+            return command;
+        }
+        if (bytes[1] == TYPE_RM) {
+            RmCommand command = new RmCommand(key);
+            command.setTimestamp(timestamp);
+            return command;
+        }
+        return null;
+    }
+
+    /**
+     * 只取value，读路径上不创建命令对象；删除标记和已过期的记录返回null
+     */
+    public static String decodeValue(byte[] bytes) {
+        return decodeValue(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * 直接在记录视图（如SSTable的映射区）上校验并解码value，只拷贝value本身
+     */
+    public static String decodeValue(ByteBuffer record) {
+        int base = record.position();
+        if (record.remaining() > 0 && record.get(base) == LEGACY_JSON) {
+            byte[] bytes = new byte[record.remaining()];
+            record.duplicate().get(bytes);
+            Command command = decode(bytes);
+            return command instanceof SetCommand ? ((SetCommand) command).getValue() : null;
+        }
+        if (!verify(record)) {
+            throw new IllegalStateException("corrupt record");
+        }
+        if (record.get(base + 1) != TYPE_SET) {
+            return null;
+        }
+        byte version = record.get(base);
+        if (version == VERSION_2 && record.getLong(base + HEADER_SIZE) <= System.currentTimeMillis()) {
+            return null;
+        }
+        int keyLen = record.getInt(base + 2);
+        int valueLen = record.getInt(base + 6);
+        if (valueLen < 0) {
+            return null;
+        }
+        int valueStart = base + headerSize(version) + keyLen;
+        if (record.hasArray()) {
+            return new String(record.array(), record.arrayOffset() + valueStart, valueLen, StandardCharsets.UTF_8);
+        }
+        byte[] value = new byte[valueLen];
+        ByteBuffer view = record.duplicate();
+        view.position(valueStart);
+        view.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 记录的过期时间，不过期（包括删除标记和旧版本的记录）返回0，不校验CRC
+     */
+    public static long expireAt(byte[] bytes) {
+        return expireAt(ByteBuffer.wrap(bytes));
+    }
+
+    public static long expireAt(ByteBuffer record) {
+        int base = record.position();
+        if (record.remaining() < HEADER_SIZE_V2 || record.get(base) != VERSION_2) {
+            return 0;
+        }
+        return record.getLong(base + HEADER_SIZE);
+    }
+
+    /**
+     * 记录的key是否等于key（UTF-8），只比较字节不解码，也不校验CRC
+     */
+    public static boolean keyEquals(ByteBuffer record, byte[] key) {
+        int base = record.position();
+        if (record.remaining() > 0 && record.get(base) == LEGACY_JSON) {
+            byte[] bytes = new byte[record.remaining()];
+            record.duplicate().get(bytes);
+            Command command = decode(bytes);
+            return command != null && Arrays.equals(command.getKey().getBytes(StandardCharsets.UTF_8), key);
+        }
+        int headerSize = headerSize(record.remaining() > 0 ? record.get(base) : VERSION_1);
+        if (record.remaining() < headerSize) {
+            return false;
+        }
+        int keyLen = record.getInt(base + 2);
+        if (keyLen != key.length || headerSize + keyLen > record.remaining()) {
+            return false;
+        }
+        for (int i = 0; i < keyLen; i++) {
+            if (record.get(base + headerSize + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean verify(byte[] bytes) {
+        return verify(ByteBuffer.wrap(bytes));
+    }
+
+    private static boolean verify(ByteBuffer record) {
+        int base = record.position();
+        int length = record.remaining();
+        if (length < HEADER_SIZE) {
+            return false;
+        }
+        byte version = record.get(base);
+        if (version != VERSION_1 && (version != VERSION_2 || length < HEADER_SIZE_V2)) {
+            return false;
+        }
+        int keyLen = record.getInt(base + 2);
+        int valueLen = record.getInt(base + 6);
+        if (keyLen < 0 || (long) headerSize(version) + keyLen + Math.max(valueLen, 0) != length) {
+            return false;
+        }
+        return record.getInt(base + CRC_OFFSET) == crc(record);
+    }
+
+    private static int headerSize(byte version) {
+        return version == VERSION_2 ? HEADER_SIZE_V2 : HEADER_SIZE;
+    }
+
+    private static int crc(byte[] bytes) {
+        return crc(ByteBuffer.wrap(bytes));
+    }
+
+    private static int crc(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        ByteBuffer view = record.duplicate();
+        int base = view.position();
+        int end = view.limit();
+        view.limit(base + CRC_OFFSET);
+        crc.update(view);
+        view.limit(end).position(base + CRC_OFFSET + 4);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+}
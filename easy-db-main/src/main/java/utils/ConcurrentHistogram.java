@@ -0,0 +1,101 @@
+/*
+ *@Type ConcurrentHistogram.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/28 09:30
+ * @version
+ */
+package utils;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多线程共用的延迟直方图，分格和LatencyHistogram一样。
+ * 每格一个LongAdder，第一次落到这一格时才创建，延迟通常集中在几十格里；
+ * 热点格上的并发记录由LongAdder分散到不同的cell，记录本身不会成为瓶颈
+ */
+public class ConcurrentHistogram {
+
+    private final AtomicReferenceArray<LongAdder> counts = new AtomicReferenceArray<>(LatencyHistogram.BUCKETS);
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int index = LatencyHistogram.indexOf(value);
+        LongAdder count = counts.get(index);
+        if (count == null) {
+            counts.compareAndSet(index, null, new LongAdder());
+            count = counts.get(index);
+        }
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * 记录从startNanos到现在的耗时
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            LongAdder count = counts.get(i);
+            if (count != null) {
+                total += count.sum();
+            }
+        }
+        return total;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * 读各格的当前值，和并发的记录不是同一时刻的快照，统计用足够了
+     */
+    public LatencyHistogram snapshot() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < counts.length(); i++) {
+            LongAdder count = counts.get(i);
+            if (count != null) {
+                histogram.recordBucket(i, count.sum());
+            }
+        }
+        histogram.limitMax(max.get());
+        return histogram;
+    }
+
+    /**
+     * 按 name.count、name.meanMicros、name.p50Micros ... 的形式输出
+     */
+    public void putMetrics(String name, Map<String, Object> out) {
+        LatencyHistogram h = snapshot();
+        long count = h.getTotalCount();
+        out.put(name + ".count", count);
+        out.put(name + ".meanMicros", round(count == 0 ? 0 : sum.sum() / 1000.0 / count));
+        out.put(name + ".p50Micros", round(h.getValueAtPercentile(50) / 1000.0));
+        out.put(name + ".p99Micros", round(h.getValueAtPercentile(99) / 1000.0));
+        out.put(name + ".p999Micros", round(h.getValueAtPercentile(99.9) / 1000.0));
+        out.put(name + ".maxMicros", round(h.getMax() / 1000.0));
+    }
+
+    private static double round(double micros) {
+        return Math.round(micros * 10) / 10.0;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ *@Type FrameCodec.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/23 09:20
+ * @version
+ */
+package utils;
+
+import dto.ActionDTO;
+import dto.ActionTypeEnum;
+import dto.RespDTO;
+import dto.RespStatusTypeEnum;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 客户端和服务端共用的二进制协议，每个消息是一个带长度前缀的帧，一个连接上可以连续收发。
+ * <pre>
+ * 请求：int 帧长 | byte 操作码 | long 请求编号 | int key长度 | key | int value长度(-1为null) | value
+ * 范围请求：同上，末尾再加 int 每页条数
+ * SETEX请求：同上，末尾再加 long 过期时长（毫秒）
+ * 批量请求：int 帧长 | byte 操作码 | long 请求编号 | int 条数 | 每条 key（MSET为 key value）
+ * 响应：int 帧长 | byte 状态码 | long 请求编号 | int value长度(-1为null) | value
+ *       | int values条数(-1为无) | values | int keys条数(-1为无) | keys
+ * </pre>
+ * 帧长不含自身的4字节，字符串都是UTF-8。编解码都在调用方复用的ByteBuffer上进行，
+ * 容量不够时返回扩容后的新缓冲区
+ */
+public class FrameCodec {
+    public static final int HEADER_SIZE = 4;
+
+    /**
+     * 操作码 + 请求编号 + key长度 + value长度
+     */
+    private static final int REQUEST_FIXED = 1 + 8 + 4 + 4;
+
+    /**
+     * 操作码 + 请求编号 + 条数
+     */
+    private static final int MULTI_REQUEST_FIXED = 1 + 8 + 4;
+
+    /**
+     * 状态码 + 请求编号 + value长度 + 两个列表条数
+     */
+    private static final int RESPONSE_FIXED = 1 + 8 + 4 + 4 + 4;
+
+    private static final int NULL_LEN = -1;
+
+    /**
+     * 把请求帧追加到out（写模式），返回写入后的缓冲区，可能是扩容后的新缓冲区
+     */
+    public static ByteBuffer writeRequest(ByteBuffer out, ActionDTO dto) {
+        if (dto.getType().isMulti()) {
+            return writeMultiRequest(out, dto);
+        }
+        byte[] key = bytes(dto.getKey());
+        byte[] value = bytes(dto.getValue());
+        boolean scan = dto.getType().isScan();
+        boolean ttl = dto.getType() == ActionTypeEnum.SETEX;
+        int bodyLen = REQUEST_FIXED + len(key) + len(value) + (scan ? 4 : 0) + (ttl ? 8 : 0);
+        out = ensure(out, HEADER_SIZE + bodyLen);
+        out.putInt(bodyLen);
+        out.put(dto.getType().getCode());
+        out.putLong(dto.getId());
+        putBytes(out, key);
+        putBytes(out, value);
+        if (scan) {
+            out.putInt(dto.getLimit());
+        }
+        if (ttl) {
+            out.putLong(dto.getTtl());
+        }
+        return out;
+    }
+
+    private static ByteBuffer writeMultiRequest(ByteBuffer out, ActionDTO dto) {
+        byte[][] keys = bytes(dto.getKeys());
+        byte[][] values = dto.getType() == ActionTypeEnum.MSET ? bytes(dto.getValues()) : null;
+        if (values != null && values.length != keys.length) {
+            throw new IllegalArgumentException("MSET needs as many values as keys");
+        }
+        int bodyLen = MULTI_REQUEST_FIXED + size(keys) + size(values);
+        out = ensure(out, HEADER_SIZE + bodyLen);
+        out.putInt(bodyLen);
+        out.put(dto.getType().getCode());
+        out.putLong(dto.getId());
+        out.putInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            putBytes(out, keys[i]);
+            if (values != null) {
+                putBytes(out, values[i]);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 把响应帧追加到out（写模式），返回写入后的缓冲区，可能是扩容后的新缓冲区
+     */
+    public static ByteBuffer writeResponse(ByteBuffer out, RespDTO resp) {
+        byte[] value = bytes(resp.getValue());
+        byte[][] values = resp.getValues() == null ? null : bytes(resp.getValues());
+        byte[][] keys = resp.getKeys() == null ? null : bytes(resp.getKeys());
+        int bodyLen = RESPONSE_FIXED + len(value) + size(values) + size(keys);
+        out = ensure(out, HEADER_SIZE + bodyLen);
+        out.putInt(bodyLen);
+        out.put(resp.getStatus().getCode());
+        out.putLong(resp.getId());
+        putBytes(out, value);
+        putList(out, values);
+        putList(out, keys);
+        return out;
+    }
+
+    private static void putList(ByteBuffer out, byte[][] list) {
+        if (list == null) {
+            out.putInt(NULL_LEN);
+            return;
+        }
+        out.putInt(list.length);
+        for (byte[] bytes : list) {
+            putBytes(out, bytes);
+        }
+    }
+
+    private static List<String> getList(ByteBuffer body) throws IOException {
+        int count = body.getInt();
+        if (count == NULL_LEN) {
+            return null;
+        }
+        checkCount(count, body);
+        List<String> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(getString(body));
+        }
+        return list;
+    }
+
+    public static ActionDTO decodeRequest(ByteBuffer body) throws IOException {
+        try {
+            ActionTypeEnum type = ActionTypeEnum.fromCode(body.get());
+            if (type == null) {
+                throw new IOException("unknown opcode");
+            }
+            long id = body.getLong();
+            ActionDTO dto;
+            if (type.isMulti()) {
+                int count = body.getInt();
+                checkCount(count, body);
+                List<String> keys = new ArrayList<>(count);
+                List<String> values = type == ActionTypeEnum.MSET ? new ArrayList<>(count) : null;
+                for (int i = 0; i < count; i++) {
+                    keys.add(getString(body));
+                    if (values != null) {
+                        values.add(getString(body));
+                    }
+                }
+                dto = new ActionDTO(type, keys, values);
+            } else {
+                String key = getString(body);
+                String value = getString(body);
+                dto = new ActionDTO(type, key, value);
+                if (type.isScan()) {
+                    dto.setLimit(body.getInt());
+                }
+                if (type == ActionTypeEnum.SETEX) {
+                    dto.setTtl(body.getLong());
+                }
+            }
+            dto.setId(id);
+            return dto;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("malformed request frame", e);
+        }
+    }
+
+    public static RespDTO decodeResponse(ByteBuffer body) throws IOException {
+        try {
+            RespStatusTypeEnum status = RespStatusTypeEnum.fromCode(body.get());
+            if (status == null) {
+                throw new IOException("unknown status");
+            }
+            long id = body.getLong();
+            RespDTO resp = new RespDTO(status, getString(body));
+            resp.setId(id);
+            resp.setValues(getList(body));
+            resp.setKeys(getList(body));
+            return resp;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("malformed response frame", e);
+        }
+    }
+
+    /**
+     * 从in（读模式）的当前位置取一个完整帧的帧体，并把in的位置移到帧后；
+     * 数据不够一帧时不移动位置，返回null
+     */
+    public static ByteBuffer nextFrame(ByteBuffer in, int maxBytes) throws IOException {
+        if (in.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        int len = in.getInt(in.position());
+        checkLength(len, maxBytes);
+        if (in.remaining() < HEADER_SIZE + len) {
+            return null;
+        }
+        ByteBuffer body = in.duplicate();
+        body.position(in.position() + HEADER_SIZE);
+        body.limit(body.position() + len);
+        in.position(body.limit());
+        return body;
+    }
+
+    /**
+     * 从流里读一帧的帧体到buffer（不够大时换新的），返回读模式的缓冲区；连接在帧边界关闭时返回null
+     */
+    public static ByteBuffer readFrame(DataInputStream in, ByteBuffer buffer, int maxBytes) throws IOException {
+        int len;
+        try {
+            len = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        checkLength(len, maxBytes);
+        if (buffer.capacity() < len) {
+            buffer = ByteBuffer.allocate(len);
+        }
+        buffer.clear();
+        in.readFully(buffer.array(), buffer.arrayOffset(), len);
+        buffer.limit(len);
+        return buffer;
+    }
+
+    /**
+     * 保证out还能写入need字节，不够时按两倍扩容
+     */
+    public static ByteBuffer ensure(ByteBuffer out, int need) {
+        if (out.remaining() >= need) {
+            return out;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + need));
+        out.flip();
+        bigger.put(out);
+        return bigger;
+    }
+
+    private static void checkLength(int len, int maxBytes) throws IOException {
+        if (len <= 0 || len > maxBytes) {
+            throw new IOException("bad frame length " + len);
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] bytes(List<String> list) {
+        byte[][] bytes = new byte[list.size()][];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = bytes(list.get(i));
+        }
+        return bytes;
+    }
+
+    private static int len(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    /**
+     * 一组字符串编码后的字节数，每个带4字节长度
+     */
+    private static int size(byte[][] bytes) {
+        if (bytes == null) {
+            return 0;
+        }
+        int size = 0;
+        for (byte[] b : bytes) {
+            size += 4 + len(b);
+        }
+        return size;
+    }
+
+    /**
+     * 列表条数，每条至少占4字节长度，超过剩余字节说明帧是坏的
+     */
+    private static void checkCount(int count, ByteBuffer body) throws IOException {
+        if (count < 0 || count > body.remaining() / 4) {
+            throw new IOException("bad list count " + count);
+        }
+    }
+
+    private static void putBytes(ByteBuffer out, byte[] bytes) {
+        if (bytes == null) {
+            out.putInt(NULL_LEN);
+            return;
+        }
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer body) throws IOException {
+        int len = body.getInt();
+        if (len == NULL_LEN) {
+            return null;
+        }
+        if (len < 0 || len > body.remaining()) {
+            throw new IOException("bad string length " + len);
+        }
+        String s = new String(body.array(), body.arrayOffset() + body.position(), len, StandardCharsets.UTF_8);
+        body.position(body.position() + len);
+        return s;
+    }
+}
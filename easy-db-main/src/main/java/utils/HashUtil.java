@@ -0,0 +1,32 @@
+/*
+ *@Type HashUtil.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/29 17:00
+ * @version
+ */
+package utils;
+
+/**
+ * key的64位哈希，SSTable的布隆过滤器和堆外索引共用。
+ * 布隆过滤器的结果持久化在SSTable里，改算法前要先升级表格式
+ */
+public class HashUtil {
+
+    /**
+     * FNV-1a（字节按无符号处理）后再做一次murmur3的fmix64
+     */
+    public static long hash64(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
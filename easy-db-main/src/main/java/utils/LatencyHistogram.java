@@ -0,0 +1,141 @@
+/*
+ *@Type LatencyHistogram.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/27 16:10
+ * @version
+ */
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * HdrHistogram式的对数-线性直方图，记录纳秒级延迟。
+ * 小于256的值每个一格；更大的值按最高位分段，每段再线性分成128格，
+ * 所以任何值的相对误差都小于1/128（约0.8%），全部范围只要约7400个计数器。
+ * 非线程安全：每个线程记录自己的直方图，最后用add合并
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    static final int BUCKETS = LINEAR_LIMIT + (64 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+
+    private long totalCount;
+
+    private long min = Long.MAX_VALUE;
+
+    private long max;
+
+    private double sum;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        // 最高位在第 SUB_BUCKET_BITS + shift 位，右移后落在[128, 256)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift);
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (sub - SUB_BUCKETS);
+    }
+
+    /**
+     * 第index格能表示的最大值，分位数按它报告，和HdrHistogram一致（偏保守）
+     */
+    static long highestOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return (sub << shift) + (1L << shift) - 1;
+    }
+
+    /**
+     * 直接给第index格加n次，ConcurrentHistogram取快照时用；sum按格子上限估算
+     */
+    void recordBucket(int index, long n) {
+        if (n <= 0) {
+            return;
+        }
+        long value = highestOf(index);
+        counts[index] += n;
+        totalCount += n;
+        sum += (double) value * n;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * 已知的真实最大值，比格子上限小时用它
+     */
+    void limitMax(long trueMax) {
+        max = Math.min(max, trueMax);
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * percentile取0到100，如99.9
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+}
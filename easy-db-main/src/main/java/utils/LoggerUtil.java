@@ -9,6 +9,8 @@ package utils;
 
 import org.slf4j.Logger;
 
+import java.util.Arrays;
+
 public class LoggerUtil {
 
     public static void debug(Logger logger, String format, Object... arguments) {
@@ -24,9 +26,15 @@ public class LoggerUtil {
         }
     }
 
+    /**
+     * 异常放在参数的最后一个，slf4j会把它当作异常输出堆栈；
+     * 直接传 (format, arguments, t) 时数组本身会被当成第一个占位符的值
+     */
     public static void error(Logger logger, Throwable t, String format, Object... arguments) {
         if (logger.isErrorEnabled()) {
-            logger.error(format, arguments, t);
+            Object[] withThrowable = Arrays.copyOf(arguments, arguments.length + 1);
+            withThrowable[arguments.length] = t;
+            logger.error(format, withThrowable);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+/*
+ *@Type MetricsMBean.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/28 11:20
+ * @version
+ */
+package utils;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 把一组指标作为只读属性暴露给JMX，每个指标名是一个属性，读属性时才取快照。
+ * 和STATS命令用同一份指标，jconsole、VisualVM等工具直接可以看
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    private final String description;
+
+    private final Supplier<Map<String, Object>> metrics;
+
+    public MetricsMBean(String description, Supplier<Map<String, Object>> metrics) {
+        this.description = description;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 注册到平台MBeanServer，同名的已存在时先注销旧的
+     */
+    public static ObjectName register(String name, String description, Supplier<Map<String, Object>> metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new MetricsMBean(description, metrics), objectName);
+            return objectName;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void unregister(ObjectName objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Object value = metrics.get().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    /**
+     * 一次取快照返回多个属性，jconsole刷新时就是这样取的
+     */
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Object> snapshot = metrics.get();
+        AttributeList list = new AttributeList();
+        for (String name : attributes) {
+            Object value = snapshot.get(name);
+            if (value != null) {
+                list.add(new Attribute(name, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : metrics.get().entrySet()) {
+            attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), description, attributes.toArray(new MBeanAttributeInfo[0]),
+                null, new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+    }
+}
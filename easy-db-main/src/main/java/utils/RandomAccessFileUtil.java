@@ -15,7 +15,7 @@ public class RandomAccessFileUtil {
 
     private static final String RW_MODE = "rw";
 
-    public static int write(String filePath, byte[] value) {
+    public static long write(String filePath, byte[] value) {
         RandomAccessFile file = null;
         long len = -1L;
         try {
@@ -27,7 +27,7 @@ public class RandomAccessFileUtil {
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return (int)len;
+        return len;
     }
     public static void writeInt(String filePath, int value) {
         RandomAccessFile file = null;
@@ -43,12 +43,12 @@ public class RandomAccessFileUtil {
         }
     }
 
-    public static byte[] readByIndex(String filePath, int index, int len) {
+    public static byte[] readByIndex(String filePath, long index, int len) {
         RandomAccessFile file = null;
         byte[] res = new byte[len];
         try {
             file = new RandomAccessFile(filePath, RW_MODE);
-            file.seek((long)index);
+            file.seek(index);
             file.read(res, 0, len);
             return res;
         } catch (Exception e) {
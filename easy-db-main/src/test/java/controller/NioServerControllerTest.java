@@ -0,0 +1,154 @@
+/*
+ *@Type NioServerControllerTest.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/29 15:00
+ * @version
+ */
+package controller;
+
+import client.SocketClient;
+import dto.ActionDTO;
+import dto.ActionTypeEnum;
+import dto.RespDTO;
+import dto.RespStatusTypeEnum;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import service.FsyncTypeEnum;
+import service.NormalStore;
+import service.StoreConfig;
+import utils.FrameCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 流水线发来的帧在读缓冲区里累积超过maxRequestBytes时不能断开连接，上限只针对单个帧
+ */
+public class NioServerControllerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NormalStore store;
+    private NioServerController controller;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        StoreConfig storeConfig = new StoreConfig();
+        storeConfig.setFsyncType(FsyncTypeEnum.NEVER);
+        store = new NormalStore(folder.newFolder("data").getPath(), storeConfig);
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        ServerConfig config = new ServerConfig();
+        config.setMode(ServerModeEnum.NIO);
+        config.setJmxEnabled(false);
+        controller = new NioServerController("localhost", port, store, config);
+        Thread thread = new Thread(controller::startServer, "test-server");
+        thread.setDaemon(true);
+        thread.start();
+        awaitListening();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        controller.stopServer();
+        store.close();
+    }
+
+    @Test
+    public void pipelinedSmallFramesLargerThanMaxRequestBytes() throws Exception {
+        int maxRequestBytes = controller.getConfig().getMaxRequestBytes();
+        int count = 20000;
+        String value = repeat('v', 100);
+        try (Socket socket = new Socket("localhost", port)) {
+            // 先全部写出再读响应，服务端读缓冲区里会堆积远超单帧上限的数据
+            AtomicReference<Exception> writeError = new AtomicReference<>();
+            AtomicLong written = new AtomicLong();
+            Thread writer = new Thread(() -> {
+                try {
+                    OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+                    ByteBuffer buffer = ByteBuffer.allocate(256);
+                    for (int i = 0; i < count; i++) {
+                        ActionDTO dto = new ActionDTO(ActionTypeEnum.SET, "key" + i, value);
+                        dto.setId(i);
+                        buffer.clear();
+                        buffer = FrameCodec.writeRequest(buffer, dto);
+                        out.write(buffer.array(), 0, buffer.position());
+                        written.addAndGet(buffer.position());
+                    }
+                    out.flush();
+                } catch (Exception e) {
+                    writeError.set(e);
+                }
+            });
+            writer.start();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            ByteBuffer frame = ByteBuffer.allocate(256);
+            for (int i = 0; i < count; i++) {
+                frame = FrameCodec.readFrame(in, frame, maxRequestBytes);
+                RespDTO resp = FrameCodec.decodeResponse(frame);
+                assertEquals(i, resp.getId());
+                assertEquals(RespStatusTypeEnum.SUCCESS, resp.getStatus());
+            }
+            writer.join();
+            assertNull(writeError.get());
+            assertTrue(written.get() > maxRequestBytes);
+        }
+        assertEquals(value, store.get("key0"));
+        assertEquals(value, store.get("key" + (count - 1)));
+    }
+
+    @Test
+    public void largeMsetSplitIntoPipelinedChunks() {
+        Map<String, String> kvs = new LinkedHashMap<>();
+        for (int i = 0; i < 40000; i++) {
+            kvs.put("user" + i, repeat('x', 100));
+        }
+        try (SocketClient client = new SocketClient("localhost", port)) {
+            client.mset(kvs);
+            List<String> keys = new ArrayList<>(kvs.keySet());
+            List<String> values = client.mget(keys);
+            assertEquals(keys.size(), values.size());
+            assertEquals(kvs.get("user39999"), values.get(values.size() - 1));
+        }
+    }
+
+    private void awaitListening() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try (Socket ignored = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("server did not start on port " + port);
+    }
+
+    private static String repeat(char c, int n) {
+        char[] chars = new char[n];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *@Type NormalStoreCompactionTest.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/29 18:20
+ * @version
+ */
+package service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import service.index.IndexTypeEnum;
+import service.table.HintFile;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 合并后每个key只剩最新的值，删除标记被丢弃且不会让更旧的值重新出现，
+ * 重启后不管有没有提示文件都能重建出同样的索引
+ */
+public class NormalStoreCompactionTest {
+
+    private static final int KEYS = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsNewestAndDropsTombstones() throws Exception {
+        verifyCompaction(IndexTypeEnum.HASH);
+    }
+
+    @Test
+    public void keepsNewestAndDropsTombstonesOffHeap() throws Exception {
+        verifyCompaction(IndexTypeEnum.OFF_HEAP);
+    }
+
+    @Test
+    public void keepsNewestAndDropsTombstonesWithoutIndex() throws Exception {
+        verifyCompaction(IndexTypeEnum.NONE);
+    }
+
+    private void verifyCompaction(IndexTypeEnum indexType) throws Exception {
+        String dir = folder.newFolder("data").getPath();
+        StoreConfig config = config(indexType);
+        NormalStore store = new NormalStore(dir, config);
+        for (int i = 0; i < KEYS; i++) {
+            store.set(key(i), "old" + i);
+        }
+        for (int i = 0; i < KEYS; i += 2) {
+            store.set(key(i), "new" + i);
+        }
+        for (int i = 0; i < KEYS; i += 3) {
+            store.rm(key(i));
+        }
+        // 把上面的记录都挤出内存表，刷成SSTable
+        for (int i = 0; i < KEYS; i++) {
+            store.set("filler" + i, "filler" + i);
+        }
+        store.close();
+
+        store = new NormalStore(dir, config);
+        try {
+            assertTrue((Integer) store.metrics().get("store.tables") > 2);
+            store.compact();
+            assertEquals(1, store.metrics().get("store.tables"));
+            assertValues(store);
+        } finally {
+            store.close();
+        }
+
+        // 输出表里没有删除标记，也没有被删掉的key
+        File[] hints = hints(dir);
+        assertEquals(1, hints.length);
+        Set<String> keys = new HashSet<>();
+        assertTrue(HintFile.read(hints[0].getPath(), (key, pos, len, tombstone, expireAt) -> {
+            assertFalse(key + " kept as tombstone", tombstone);
+            keys.add(key);
+        }));
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(key(i), i % 3 != 0, keys.contains(key(i)));
+        }
+
+        // 从提示文件重建
+        store = new NormalStore(dir, config);
+        try {
+            assertValues(store);
+        } finally {
+            store.close();
+        }
+
+        // 没有提示文件时扫描表重建
+        for (File hint : hints(dir)) {
+            assertTrue(hint.delete());
+        }
+        store = new NormalStore(dir, config);
+        try {
+            assertValues(store);
+        } finally {
+            store.close();
+        }
+        // 不建索引时不读提示文件，也就不会重写
+        assertEquals(indexType == IndexTypeEnum.NONE ? 0 : 1, hints(dir).length);
+    }
+
+    private static void assertValues(NormalStore store) {
+        for (int i = 0; i < KEYS; i++) {
+            String expected = i % 3 == 0 ? null : i % 2 == 0 ? "new" + i : "old" + i;
+            assertEquals(key(i), expected, store.get(key(i)));
+        }
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals("filler" + i, store.get("filler" + i));
+        }
+        assertNull(store.get("missing"));
+    }
+
+    private static StoreConfig config(IndexTypeEnum indexType) {
+        StoreConfig config = new StoreConfig();
+        config.setFsyncType(FsyncTypeEnum.NEVER);
+        config.setStoreThreshold(2048);
+        // 只在测试里手动合并
+        config.setCompactionTrigger(1000);
+        config.setIndexType(indexType);
+        return config;
+    }
+
+    private static File[] hints(String dir) {
+        return new File(dir).listFiles((d, name) -> name.endsWith(HintFile.SUFFIX));
+    }
+
+    private static String key(int i) {
+        return String.format("key%03d", i);
+    }
+}
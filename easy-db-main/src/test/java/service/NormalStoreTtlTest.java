@@ -0,0 +1,146 @@
+/*
+ *@Type NormalStoreTtlTest.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/29 18:40
+ * @version
+ */
+package service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 过期的key读不到，后台清理会移出索引，重启后过期时间仍然有效
+ */
+public class NormalStoreTtlTest {
+
+    private static final long TTL = 300;
+
+    private static final long WAIT_MS = 5000;
+
+    private static final int KEYS = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void expiredKeyIsHiddenOnRead() throws Exception {
+        // 关掉后台清理，只靠读时判断
+        StoreConfig config = config(0);
+        NormalStore store = new NormalStore(folder.newFolder("data").getPath(), config);
+        try {
+            store.set("short", "v", TTL);
+            store.set("long", "v", 60_000);
+            store.set("plain", "v");
+            store.set("overwritten", "v", TTL);
+            store.set("overwritten", "kept");
+            assertEquals("v", store.get("short"));
+            Thread.sleep(TTL + 100);
+            assertNull(store.get("short"));
+            assertEquals("v", store.get("long"));
+            assertEquals("v", store.get("plain"));
+            assertEquals("kept", store.get("overwritten"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void sweeperRemovesExpiredKeysFromIndex() throws Exception {
+        StoreConfig config = config(50);
+        NormalStore store = new NormalStore(folder.newFolder("data").getPath(), config);
+        try {
+            for (int i = 0; i < KEYS; i++) {
+                store.set("ttl" + i, "v" + i, TTL);
+            }
+            store.set("ttl0", "no longer expiring");
+            // 把带过期时间的记录刷进SSTable，索引里才有它们
+            writeFiller(store);
+            assertEquals(KEYS - 1, ((Number) store.metrics().get("store.expiringKeys")).intValue());
+            long indexed = store.getIndexSize();
+
+            long deadline = System.currentTimeMillis() + WAIT_MS;
+            while (store.getIndexSize() > indexed - (KEYS - 1) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(indexed - (KEYS - 1), store.getIndexSize());
+            assertEquals(0, ((Number) store.metrics().get("store.expiringKeys")).intValue());
+            assertTrue(store.getStats().getExpired() >= KEYS - 1);
+            assertEquals("no longer expiring", store.get("ttl0"));
+            for (int i = 1; i < KEYS; i++) {
+                assertNull(store.get("ttl" + i));
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void expirySurvivesReopen() throws Exception {
+        String dir = folder.newFolder("data").getPath();
+        StoreConfig config = config(50);
+        NormalStore store = new NormalStore(dir, config);
+        // 一部分刷进SSTable，一部分留在日志里
+        for (int i = 0; i < KEYS; i++) {
+            store.set("table" + i, "v" + i, TTL);
+        }
+        writeFiller(store);
+        for (int i = 0; i < KEYS; i++) {
+            store.set("log" + i, "v" + i, TTL);
+        }
+        store.close();
+
+        // 到期前重启，值还在
+        store = new NormalStore(dir, config);
+        try {
+            assertEquals("v1", store.get("table1"));
+            assertEquals("v1", store.get("log1"));
+        } finally {
+            store.close();
+        }
+
+        Thread.sleep(TTL + 100);
+        // 到期后重启，加载时就当作删除
+        store = new NormalStore(dir, config);
+        try {
+            for (int i = 0; i < KEYS; i++) {
+                assertNull(store.get("table" + i));
+                assertNull(store.get("log" + i));
+            }
+            assertEquals(0, ((Number) store.metrics().get("store.expiringKeys")).intValue());
+            assertEquals("filler0", store.get("filler0"));
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * 写够几个内存表的数据：冻结新表前会等上一个刷完，之前写的记录都已经在SSTable和索引里
+     */
+    private static void writeFiller(NormalStore store) throws Exception {
+        long tables = ((Number) store.metrics().get("store.tables")).longValue();
+        for (int i = 0; i < 200; i++) {
+            store.set("filler" + i, "filler" + i);
+        }
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (((Number) store.metrics().get("store.tables")).longValue() == tables
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static StoreConfig config(int expireIntervalMs) {
+        StoreConfig config = new StoreConfig();
+        config.setFsyncType(FsyncTypeEnum.NEVER);
+        config.setStoreThreshold(2048);
+        config.setCompactionTrigger(1000);
+        config.setExpireIntervalMs(expireIntervalMs);
+        return config;
+    }
+}
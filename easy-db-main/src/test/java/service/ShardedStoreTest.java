@@ -0,0 +1,137 @@
+/*
+ *@Type ShardedStoreTest.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/29 19:00
+ * @version
+ */
+package service;
+
+import dto.ScanResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 跨分片范围查询：各分片的结果按key归并，按nextKey翻页不漏也不重复
+ */
+public class ShardedStoreTest {
+
+    private static final int SHARDS = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ShardedStore store;
+
+    /**
+     * 所有分片里应有的数据
+     */
+    private final TreeMap<String, String> expected = new TreeMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        List<String> dirs = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            dirs.add(folder.newFolder("shard" + i).getPath());
+        }
+        StoreConfig config = new StoreConfig();
+        config.setFsyncType(FsyncTypeEnum.NEVER);
+        // 一部分数据刷进SSTable，一部分在内存表
+        config.setStoreThreshold(4096);
+        store = new ShardedStore(dirs, config);
+        for (int i = 0; i < 1000; i++) {
+            put(String.format("key%04d", i), "v" + i);
+        }
+        for (int i = 0; i < 1000; i += 7) {
+            String key = String.format("key%04d", i);
+            store.rm(key);
+            expected.remove(key);
+        }
+        for (int i = 0; i < 1000; i += 5) {
+            put(String.format("key%04d", i), "new" + i);
+        }
+        put("a", "first");
+        put("zzz", "last");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    public void pagesCoverRangeWithoutGapsOrDuplicates() {
+        for (int limit : new int[]{1, 3, 7, 50, 333, 1000, 5000}) {
+            assertEquals("limit " + limit, expected, scanAll(null, null, limit));
+        }
+    }
+
+    @Test
+    public void boundedRangeAndPrefix() {
+        assertEquals(expected.subMap("key0100", "key0500"), scanAll("key0100", "key0500", 17));
+        assertEquals(expected.subMap("key0100", true, "key0100", true), scanAll("key0100", "key0101", 4));
+        assertEquals(expected.subMap("key05", "key06"), prefixAll("key05", 9));
+        assertTrue(scanAll("key2", "key3", 10).isEmpty());
+    }
+
+    @Test
+    public void singlePageMergesShardsInOrder() {
+        ScanResult page = store.scan(null, null, 10);
+        assertEquals(new ArrayList<>(expected.keySet()).subList(0, 10), page.getKeys());
+        // 第11个key就是下一页的起点
+        assertEquals(new ArrayList<>(expected.keySet()).get(10), page.getNextKey());
+    }
+
+    private void put(String key, String value) {
+        store.set(key, value);
+        expected.put(key, value);
+    }
+
+    private Map<String, String> scanAll(String startKey, String endKey, int limit) {
+        TreeMap<String, String> seen = new TreeMap<>();
+        String from = startKey;
+        String last = null;
+        while (true) {
+            ScanResult page = store.scan(from, endKey, limit);
+            assertTrue(page.getKeys().size() <= limit);
+            assertEquals(page.getKeys().size(), page.getValues().size());
+            for (int i = 0; i < page.getKeys().size(); i++) {
+                String key = page.getKeys().get(i);
+                // 页内和跨页都严格递增，也就没有重复
+                assertTrue(key + " after " + last, last == null || key.compareTo(last) > 0);
+                last = key;
+                seen.put(key, page.getValues().get(i));
+            }
+            if (page.getNextKey() == null) {
+                return seen;
+            }
+            assertTrue(page.getNextKey() + " does not advance", from == null || page.getNextKey().compareTo(from) > 0);
+            from = page.getNextKey();
+        }
+    }
+
+    private Map<String, String> prefixAll(String prefix, int limit) {
+        Map<String, String> seen = scanAll(prefix, ScanResult.prefixEnd(prefix), limit);
+        for (String key : seen.keySet()) {
+            assertTrue(key.startsWith(prefix));
+        }
+        ScanResult first = store.prefix(prefix, limit);
+        assertEquals(new ArrayList<>(seen.keySet()).subList(0, Math.min(limit, seen.size())), first.getKeys());
+        if (seen.size() <= limit) {
+            assertNull(first.getNextKey());
+        }
+        return seen;
+    }
+}
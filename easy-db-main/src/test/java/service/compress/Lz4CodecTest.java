@@ -0,0 +1,171 @@
+/*
+ *@Type Lz4CodecTest.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/29 18:00
+ * @version
+ */
+package service.compress;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 往返、长度扩展字节、重叠匹配、不可压缩的块，以及截断和损坏的输入只抛IOException
+ */
+public class Lz4CodecTest {
+
+    private final Lz4Codec codec = new Lz4Codec();
+
+    @Test
+    public void roundTripText() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append("key").append(i % 37).append("=value").append(i % 11).append(';');
+        }
+        roundTrip(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void longMatchAndLiteralLengths() throws Exception {
+        // 匹配长度远超15+255，需要多个扩展字节
+        roundTrip(new byte[100_000]);
+        // 开头一段随机字面量超过15+255，后面跟长匹配
+        byte[] data = new byte[20_000];
+        byte[] literals = new byte[1_000];
+        new Random(2).nextBytes(literals);
+        System.arraycopy(literals, 0, data, 0, literals.length);
+        roundTrip(data);
+        // 长度恰好落在15和15+255边界附近
+        for (int len : new int[]{13, 14, 19, 20, 21, 274, 275, 276, 529, 530}) {
+            byte[] run = new byte[len + 64];
+            Arrays.fill(run, (byte) 'x');
+            new Random(len).nextBytes(literals);
+            System.arraycopy(literals, 0, run, 0, 32);
+            System.arraycopy(literals, 32, run, run.length - 32, 32);
+            roundTrip(run);
+        }
+    }
+
+    @Test
+    public void overlappingMatches() throws Exception {
+        for (int period = 1; period <= 8; period++) {
+            byte[] data = new byte[4096];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) ('a' + i % period);
+            }
+            roundTrip(data);
+        }
+    }
+
+    @Test
+    public void decodesReferenceBlockWithOverlap() throws Exception {
+        // 手工构造：字面量"a"，距离1、长度20的重叠匹配，最后字面量"bcdef"
+        byte[] block = {(byte) 0x1f, 'a', 0x01, 0x00, 0x01, (byte) 0x50, 'b', 'c', 'd', 'e', 'f'};
+        byte[] expected = new byte[26];
+        Arrays.fill(expected, 0, 21, (byte) 'a');
+        System.arraycopy("bcdef".getBytes(StandardCharsets.US_ASCII), 0, expected, 21, 5);
+        byte[] out = new byte[26];
+        codec.decompress(block, 0, block.length, out, 0, out.length);
+        assertArrayEquals(expected, out);
+    }
+
+    @Test
+    public void offsetsInLargerArrays() throws Exception {
+        byte[] data = text(3000);
+        byte[] src = new byte[data.length + 100];
+        System.arraycopy(data, 0, src, 37, data.length);
+        byte[] compressed = codec.compress(src, 37, data.length);
+        assertNotNull(compressed);
+        byte[] padded = new byte[compressed.length + 20];
+        Arrays.fill(padded, (byte) 0x7f);
+        System.arraycopy(compressed, 0, padded, 9, compressed.length);
+        byte[] out = new byte[data.length + 50];
+        codec.decompress(padded, 9, compressed.length, out, 25, data.length);
+        assertArrayEquals(data, Arrays.copyOfRange(out, 25, 25 + data.length));
+    }
+
+    @Test
+    public void incompressibleReturnsNull() {
+        byte[] random = new byte[4096];
+        new Random(3).nextBytes(random);
+        assertNull(codec.compress(random, 0, random.length));
+        // 太短的块不值得压缩
+        assertNull(codec.compress(new byte[8], 0, 8));
+        assertNull(codec.compress(new byte[0], 0, 0));
+    }
+
+    @Test
+    public void truncatedInputThrowsIOException() {
+        byte[] data = text(2000);
+        byte[] compressed = codec.compress(data, 0, data.length);
+        assertNotNull(compressed);
+        for (int len = 0; len < compressed.length; len++) {
+            // 后面还有别的数据时也不能越界读
+            byte[] padded = Arrays.copyOf(compressed, compressed.length + 16);
+            expectCorrupt(padded, len, data.length);
+            expectCorrupt(Arrays.copyOf(compressed, len), len, data.length);
+        }
+    }
+
+    @Test
+    public void corruptInputThrowsIOException() {
+        // 距离超出已解出的数据
+        expectCorrupt(new byte[]{0x00, 0x05, 0x00, 0x00}, 4, 10);
+        // 距离为0
+        expectCorrupt(new byte[]{0x10, 'a', 0x00, 0x00, 0x00}, 5, 10);
+        // 解出的长度和rawLen不一致
+        byte[] data = text(1000);
+        byte[] compressed = codec.compress(data, 0, data.length);
+        expectCorrupt(compressed, compressed.length, data.length - 1);
+        expectCorrupt(compressed, compressed.length, data.length + 1);
+        // 随机改字节，要么解出正确长度要么抛IOException
+        Random random = new Random(4);
+        for (int i = 0; i < 2000; i++) {
+            byte[] broken = compressed.clone();
+            broken[random.nextInt(broken.length)] = (byte) random.nextInt(256);
+            try {
+                codec.decompress(broken, 0, broken.length, new byte[data.length], 0, data.length);
+            } catch (IOException expected) {
+                // 预期内
+            }
+        }
+    }
+
+    private void roundTrip(byte[] data) throws IOException {
+        byte[] compressed = codec.compress(data, 0, data.length);
+        assertNotNull(compressed);
+        assertTrue(compressed.length < data.length);
+        assertTrue(compressed.length <= Lz4Codec.maxCompressedLength(data.length));
+        byte[] out = new byte[data.length];
+        codec.decompress(compressed, 0, compressed.length, out, 0, out.length);
+        assertArrayEquals(data, out);
+    }
+
+    private void expectCorrupt(byte[] src, int len, int rawLen) {
+        try {
+            codec.decompress(src, 0, len, new byte[rawLen], 0, rawLen);
+            fail("corrupt lz4 block must not decode, len=" + len);
+        } catch (IOException expected) {
+            // 预期内
+        }
+    }
+
+    private static byte[] text(int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("line ").append(i % 97).append(": the quick brown fox\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
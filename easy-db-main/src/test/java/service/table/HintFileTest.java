@@ -0,0 +1,124 @@
+/*
+ *@Type HintFileTest.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/29 16:00
+ * @version
+ */
+package service.table;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import service.FsyncTypeEnum;
+import service.NormalStore;
+import service.StoreConfig;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 提示文件损坏时read返回false，由调用方回退到扫描SSTable
+ */
+public class HintFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws Exception {
+        String path = write();
+        List<String> seen = new ArrayList<>();
+        assertTrue(HintFile.read(path, (key, pos, len, tombstone, expireAt) ->
+                seen.add(key + "," + pos + "," + len + "," + tombstone + "," + expireAt)));
+        assertEquals("a,10,20,false,0", seen.get(0));
+        assertEquals("b,30,40,true,0", seen.get(1));
+        assertEquals("c,50,60,false,123456789", seen.get(2));
+    }
+
+    @Test
+    public void negativeKeyLength() throws Exception {
+        String path = write();
+        // 第一条的key长度（魔数之后）改成负数
+        overwriteInt(path, 8, -5);
+        assertFalse(HintFile.read(path, (key, pos, len, tombstone, expireAt) -> {
+            throw new AssertionError("corrupt hint must not reach the consumer");
+        }));
+    }
+
+    @Test
+    public void hugeKeyLength() throws Exception {
+        String path = write();
+        overwriteInt(path, 8, Integer.MAX_VALUE);
+        assertFalse(HintFile.read(path, (key, pos, len, tombstone, expireAt) -> {
+            throw new AssertionError("corrupt hint must not reach the consumer");
+        }));
+    }
+
+    @Test
+    public void truncated() throws Exception {
+        String path = write();
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        assertFalse(HintFile.read(path, (key, pos, len, tombstone, expireAt) -> {
+            throw new AssertionError("corrupt hint must not reach the consumer");
+        }));
+    }
+
+    @Test
+    public void storeRebuildsIndexFromTableWhenHintIsCorrupt() throws Exception {
+        String dir = folder.newFolder("data").getPath();
+        StoreConfig config = new StoreConfig();
+        config.setFsyncType(FsyncTypeEnum.NEVER);
+        config.setStoreThreshold(4096);
+        config.setCompactionTrigger(1000);
+        NormalStore store = new NormalStore(dir, config);
+        for (int i = 0; i < 200; i++) {
+            store.set("key" + i, "value" + i);
+        }
+        store.close();
+        File[] hints = new File(dir).listFiles((d, name) -> name.endsWith(HintFile.SUFFIX));
+        assertTrue(hints.length > 0);
+        for (File hint : hints) {
+            overwriteInt(hint.getPath(), 8, -5);
+        }
+        store = new NormalStore(dir, config);
+        try {
+            for (int i = 0; i < 200; i++) {
+                assertEquals("value" + i, store.get("key" + i));
+            }
+        } finally {
+            store.close();
+        }
+        // 扫描表后重写了提示文件
+        for (File hint : hints) {
+            assertTrue(HintFile.read(hint.getPath(), (key, pos, len, tombstone, expireAt) -> {
+            }));
+        }
+    }
+
+    private String write() throws Exception {
+        String path = new File(folder.getRoot(), "data_000001.hint").getPath();
+        try (HintFile.Writer writer = new HintFile.Writer(path)) {
+            writer.add("a", 10, 20, false, 0);
+            writer.add("b", 30, 40, true, 0);
+            writer.add("c", 50, 60, false, 123456789L);
+            writer.finish();
+        }
+        return path;
+    }
+
+    private static void overwriteInt(String path, long pos, int value) throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.seek(pos);
+            file.writeInt(value);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *@Type GroupCommitLogTest.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/29 17:20
+ * @version
+ */
+package service.wal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import service.FsyncTypeEnum;
+import service.NormalStore;
+import service.StoreConfig;
+import service.WriteBatch;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 重启回放日志：完整的批量记录整批恢复，写了一半或校验不对的最后一批整批丢弃并截掉
+ */
+public class GroupCommitLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void goodBatchReplaysAfterReopen() throws Exception {
+        String dir = folder.newFolder("data").getPath();
+        NormalStore store = open(dir);
+        store.set("gone", "x");
+        store.write(new WriteBatch().set("a", "1").set("b", "2").rm("gone").set("a", "3"));
+        store.close();
+
+        store = open(dir);
+        try {
+            assertEquals("3", store.get("a"));
+            assertEquals("2", store.get("b"));
+            assertNull(store.get("gone"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void tornFinalBatchIsDropped() throws Exception {
+        String dir = folder.newFolder("data").getPath();
+        long goodEnd = writeTwoBatches(dir);
+        File wal = new File(dir, NormalStore.NAME + NormalStore.TABLE);
+        try (RandomAccessFile file = new RandomAccessFile(wal, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        assertOnlyFirstBatch(dir, wal, goodEnd);
+    }
+
+    @Test
+    public void crcMismatchDropsWholeBatch() throws Exception {
+        String dir = folder.newFolder("data").getPath();
+        long goodEnd = writeTwoBatches(dir);
+        File wal = new File(dir, NormalStore.NAME + NormalStore.TABLE);
+        long length = wal.length();
+        try (RandomAccessFile file = new RandomAccessFile(wal, "rw")) {
+            // 改批体最后一个字节，长度不变，只有CRC能发现
+            file.seek(length - 1);
+            int b = file.read();
+            file.seek(length - 1);
+            file.write(b ^ 0xff);
+        }
+
+        assertOnlyFirstBatch(dir, wal, goodEnd);
+    }
+
+    /**
+     * 写两批，返回第一批结束时日志的长度
+     */
+    private long writeTwoBatches(String dir) throws Exception {
+        NormalStore store = open(dir);
+        store.write(new WriteBatch().set("a", "1").set("b", "2"));
+        store.close();
+        long goodEnd = new File(dir, NormalStore.NAME + NormalStore.TABLE).length();
+
+        store = open(dir);
+        store.write(new WriteBatch().set("a", "changed").set("c", "3").rm("b"));
+        store.close();
+        return goodEnd;
+    }
+
+    private void assertOnlyFirstBatch(String dir, File wal, long goodEnd) throws Exception {
+        NormalStore store = open(dir);
+        try {
+            assertEquals(goodEnd, wal.length());
+            assertEquals("1", store.get("a"));
+            assertEquals("2", store.get("b"));
+            assertNull(store.get("c"));
+            // 截掉坏尾之后追加的记录能正常回放
+            store.set("d", "4");
+        } finally {
+            store.close();
+        }
+        store = open(dir);
+        try {
+            assertEquals("1", store.get("a"));
+            assertEquals("4", store.get("d"));
+        } finally {
+            store.close();
+        }
+    }
+
+    private static NormalStore open(String dir) {
+        StoreConfig config = new StoreConfig();
+        config.setFsyncType(FsyncTypeEnum.NEVER);
+        return new NormalStore(dir, config);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *@Type CommandCodecTest.java
+ * @Desc
+ * @Author urmsone urmsone@163.com
+ * @date 2024/6/29 17:40
+ * @version
+ */
+package utils;
+
+import model.command.Command;
+import model.command.RmCommand;
+import model.command.SetCommand;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 二进制格式V1/V2的往返、旧JSON记录的识别和损坏记录的处理
+ */
+public class CommandCodecTest {
+
+    @Test
+    public void setRoundTripV1() {
+        SetCommand command = new SetCommand("键key", "值value");
+        command.setTimestamp(1234567890123L);
+        byte[] bytes = CommandCodec.encode(command);
+        assertEquals(CommandCodec.VERSION_1, bytes[0]);
+        assertEquals(CommandCodec.HEADER_SIZE + utf8("键key").length + utf8("值value").length, bytes.length);
+
+        SetCommand decoded = (SetCommand) CommandCodec.decode(bytes);
+        assertEquals("键key", decoded.getKey());
+        assertEquals("值value", decoded.getValue());
+        assertEquals(1234567890123L, decoded.getTimestamp());
+        assertEquals(0, decoded.getExpireAt());
+        assertEquals("值value", CommandCodec.decodeValue(bytes));
+        assertEquals(0, CommandCodec.expireAt(bytes));
+        assertTrue(CommandCodec.keyEquals(ByteBuffer.wrap(bytes), utf8("键key")));
+        assertFalse(CommandCodec.keyEquals(ByteBuffer.wrap(bytes), utf8("key")));
+    }
+
+    @Test
+    public void setRoundTripV2() {
+        long expireAt = System.currentTimeMillis() + 60_000;
+        SetCommand command = new SetCommand("k", "v", expireAt);
+        byte[] bytes = CommandCodec.encode(command);
+        assertEquals(CommandCodec.VERSION_2, bytes[0]);
+        assertEquals(CommandCodec.HEADER_SIZE_V2 + 2, bytes.length);
+
+        SetCommand decoded = (SetCommand) CommandCodec.decode(bytes);
+        assertEquals("k", decoded.getKey());
+        assertEquals("v", decoded.getValue());
+        assertEquals(command.getTimestamp(), decoded.getTimestamp());
+        assertEquals(expireAt, decoded.getExpireAt());
+        assertEquals("v", CommandCodec.decodeValue(bytes));
+        assertEquals(expireAt, CommandCodec.expireAt(bytes));
+        assertTrue(CommandCodec.keyEquals(ByteBuffer.wrap(bytes), utf8("k")));
+    }
+
+    @Test
+    public void expiredV2ValueIsHidden() {
+        byte[] bytes = CommandCodec.encode(new SetCommand("k", "v", System.currentTimeMillis() - 1));
+        // decode保留原记录，过期判断交给调用方
+        assertEquals("v", ((SetCommand) CommandCodec.decode(bytes)).getValue());
+        assertNull(CommandCodec.decodeValue(bytes));
+    }
+
+    @Test
+    public void rmRoundTrip() {
+        RmCommand command = new RmCommand("gone");
+        byte[] bytes = CommandCodec.encode(command);
+        assertEquals(CommandCodec.VERSION_1, bytes[0]);
+
+        Command decoded = CommandCodec.decode(bytes);
+        assertTrue(decoded instanceof RmCommand);
+        assertEquals("gone", decoded.getKey());
+        assertEquals(command.getTimestamp(), decoded.getTimestamp());
+        assertNull(CommandCodec.decodeValue(bytes));
+    }
+
+    @Test
+    public void nullAndEmptyValues() {
+        SetCommand nullValue = (SetCommand) CommandCodec.decode(CommandCodec.encode(new SetCommand("k", null)));
+        assertNull(nullValue.getValue());
+        SetCommand emptyValue = (SetCommand) CommandCodec.decode(CommandCodec.encode(new SetCommand("k", "")));
+        assertEquals("", emptyValue.getValue());
+    }
+
+    @Test
+    public void decodeValueOnSlice() {
+        byte[] record = CommandCodec.encode(new SetCommand("k", "value"));
+        byte[] padded = new byte[record.length + 10];
+        System.arraycopy(record, 0, padded, 5, record.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(padded.length);
+        direct.put(padded).position(5).limit(5 + record.length);
+        assertEquals("value", CommandCodec.decodeValue(direct));
+        ByteBuffer heap = ByteBuffer.wrap(padded, 5, record.length).slice();
+        assertEquals("value", CommandCodec.decodeValue(heap));
+    }
+
+    @Test
+    public void legacyJsonFallback() {
+        // 旧版本fastjson写出的记录，没有时间戳字段
+        byte[] setBytes = utf8("{\"key\":\"old\",\"type\":\"SET\",\"value\":\"json\"}");
+        assertEquals(CommandCodec.LEGACY_JSON, setBytes[0]);
+        SetCommand decoded = (SetCommand) CommandCodec.decode(setBytes);
+        assertEquals("old", decoded.getKey());
+        assertEquals("json", decoded.getValue());
+        assertEquals(0, decoded.getExpireAt());
+        assertEquals("json", CommandCodec.decodeValue(setBytes));
+        assertEquals(0, CommandCodec.expireAt(setBytes));
+        assertTrue(CommandCodec.keyEquals(ByteBuffer.wrap(setBytes), utf8("old")));
+        assertFalse(CommandCodec.keyEquals(ByteBuffer.wrap(setBytes), utf8("new")));
+
+        byte[] rmBytes = utf8("{\"key\":\"old\",\"type\":\"RM\"}");
+        Command rm = CommandCodec.decode(rmBytes);
+        assertTrue(rm instanceof RmCommand);
+        assertEquals("old", rm.getKey());
+        assertNull(CommandCodec.decodeValue(rmBytes));
+
+        // 改写成新格式后内容不变
+        SetCommand rewritten = (SetCommand) CommandCodec.decode(CommandCodec.encode(decoded));
+        assertEquals("old", rewritten.getKey());
+        assertEquals("json", rewritten.getValue());
+    }
+
+    @Test
+    public void corruptRecords() {
+        byte[] bytes = CommandCodec.encode(new SetCommand("k", "value"));
+        byte[] flipped = bytes.clone();
+        flipped[flipped.length - 1] ^= 1;
+        assertNull(CommandCodec.decode(flipped));
+
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertNull(CommandCodec.decode(truncated));
+
+        byte[] badVersion = bytes.clone();
+        badVersion[0] = 9;
+        assertNull(CommandCodec.decode(badVersion));
+
+        assertNull(CommandCodec.decode(new byte[0]));
+        try {
+            CommandCodec.decodeValue(flipped);
+            throw new AssertionError("corrupt record must not decode");
+        } catch (IllegalStateException expected) {
+            // 读路径上的损坏记录抛异常
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}